@@ -0,0 +1,104 @@
+package ascii_art;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.NoBenchmarksException;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * runs the benchmarks of the module with the GC profiler, so every result comes with the allocation rate
+ * (gc.alloc.rate.norm is the number of bytes allocated by one operation) as well as the time. the matcher
+ * benchmarks run at every resolution the shell allows for each image size. the benchmark sources are
+ * compiled with JMH's annotation processor (jmh-generator-annprocess) on the processor path
+ */
+public class BenchmarkRunner {
+
+    private static final String USAGE = "USAGE: java ascii_art.BenchmarkRunner [benchmark regex] " +
+            "[results json file]";
+    private static final String ALL_BENCHMARKS = ".*";
+    private static final String MATCHER_BENCHMARK = "MatcherBenchmark\\.";
+    private static final String NOT_MATCHER_BENCHMARK = "^(?!.*" + MATCHER_BENCHMARK + ")";
+    private static final String JSON_EXTENSION = "(\\.json)?$";
+    private static final String RESULTS_SUFFIX_FORMAT = "_%d.json";
+    private static final String RESULTS_SUFFIX = ".json";
+    private static final String NO_BENCHMARKS_MSG = "No benchmark matches ";
+    private static final String SIZE_PARAM = "size";
+    private static final String CHARS_IN_ROW_PARAM = "charsInRow";
+    private static final int[] SIZES = {256, 1024, 4096, 8192};
+    private static final int MIN_PIXELS_PER_CHAR = 2;
+    private static final int MAX_ARGS = 2;
+
+
+    /**
+     * runs the benchmarks
+     *
+     * @param args optionally a regular expression of the benchmarks to run, and a file to write the
+     *             results to as JSON (the matcher's results of each image size go to a file of their own)
+     * @throws RunnerException if a benchmark failed
+     */
+    public static void main(String[] args) throws RunnerException {
+        if (args.length > MAX_ARGS) {
+            System.err.println(USAGE);
+            return;
+        }
+        String include = args.length > 0 ? args[0] : ALL_BENCHMARKS;
+        String results = args.length == MAX_ARGS ? args[1] : null;
+        boolean ran = false;
+        //the resolutions depend on the image size, so the matcher runs once per size
+        for (int size : SIZES) {
+            ChainedOptionsBuilder options = new OptionsBuilder().include(include)
+                    .exclude(NOT_MATCHER_BENCHMARK)
+                    .param(SIZE_PARAM, Integer.toString(size))
+                    .param(CHARS_IN_ROW_PARAM, resolutions(size));
+            ran |= run(options, results == null ? null :
+                    results.replaceFirst(JSON_EXTENSION, String.format(RESULTS_SUFFIX_FORMAT, size)));
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().include(include).exclude(MATCHER_BENCHMARK);
+        ran |= run(options, results == null ? null : results.replaceFirst(JSON_EXTENSION, RESULTS_SUFFIX));
+        if (!ran) {
+            System.err.println(NO_BENCHMARKS_MSG + include);
+        }
+    }
+
+    /**
+     * runs the benchmarks of some options with the GC profiler
+     *
+     * @param options the benchmarks to run
+     * @param results the file to write the results to, or null
+     * @return true if any benchmark matched the options
+     * @throws RunnerException if a benchmark failed
+     */
+    private static boolean run(ChainedOptionsBuilder options, String results) throws RunnerException {
+        options.addProfiler(GCProfiler.class);
+        if (results != null) {
+            options.resultFormat(ResultFormatType.JSON).result(results);
+        }
+        try {
+            new Runner(options.build()).run();
+        } catch (NoBenchmarksException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * every resolution of the shell for a square image: powers of 2 from 1 up to one char for every
+     * MIN_PIXELS_PER_CHAR pixels
+     *
+     * @param size the width of the image
+     * @return the numbers of chars in a row
+     */
+    private static String[] resolutions(int size) {
+        List<String> resolutions = new ArrayList<>();
+        for (int charsInRow = 1; charsInRow <= size / MIN_PIXELS_PER_CHAR; charsInRow *= 2) {
+            resolutions.add(Integer.toString(charsInRow));
+        }
+        return resolutions.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,72 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import image.SyntheticImages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmarks of the work done once per image, before any char is chosen: the summed-area table of the
+ * image's brightness, and the brightness of the tiles at every resolution of the shell
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class BrightnessTablesBenchmark {
+
+    private static final String FONT_NAME = "Courier New";
+    private static final int MIN_PIXELS_PER_CHAR = 2;
+    private static final int INITIAL_CHARS_IN_ROW = 64;
+
+    @Param({"256", "1024", "4096", "8192"})
+    public int size;
+
+    private Image img;
+
+
+    @Setup
+    public void setup() {
+        img = SyntheticImages.image(size);
+    }
+
+    /**
+     * builds the summed-area table of the image
+     */
+    @Benchmark
+    public BrightnessImgCharMatcher buildIntegralImage() {
+        return new BrightnessImgCharMatcher(img, FONT_NAME);
+    }
+
+    /**
+     * builds the table and the brightness of the tiles at every resolution, as the shell does
+     */
+    @Benchmark
+    public BrightnessImgCharMatcher precomputeResolutions() {
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(img, FONT_NAME);
+        matcher.precomputeResolutions(1, size / MIN_PIXELS_PER_CHAR);
+        return matcher;
+    }
+
+    /**
+     * builds the table and averages the colors of the tiles at the shell's initial resolution
+     */
+    @Benchmark
+    public int[][] chooseColors() {
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(img, FONT_NAME);
+        return matcher.chooseColors(INITIAL_CHARS_IN_ROW);
+    }
+}
@@ -0,0 +1,105 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import image.SyntheticImages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmarks of choosing the chars of an image at one resolution, with char sets of several sizes. the
+ * default resolutions are the shell's levels of a 256 pixels wide image; BenchmarkRunner runs every level
+ * of every size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class MatcherBenchmark {
+
+    private static final String FONT_NAME = "Courier New";
+    private static final int MIN_PIXELS_PER_CHAR = 2;
+    private static final int ALL_CHARS_SIZE = 95;
+
+    @Param({"256", "1024", "4096", "8192"})
+    public int size;
+
+    @Param({"1", "2", "4", "8", "16", "32", "64", "128"})
+    public int charsInRow;
+
+    /**
+     * 10 digits, 36 digits and lowercase letters, or all 95 printable chars
+     */
+    @Param({"10", "36", "95"})
+    public int charSetSize;
+
+    private Image img;
+    private CharSetBrightness charSet;
+    private char firstChar;
+    private BrightnessImgCharMatcher charMatcher;
+    private ShapeImgCharMatcher shapeMatcher;
+
+
+    /**
+     * prepares the image, the char set and a matcher whose tables are already built
+     */
+    @Setup
+    public void setup() {
+        if (charsInRow > size / MIN_PIXELS_PER_CHAR) {
+            throw new IllegalArgumentException("resolution " + charsInRow + " is above the maximum of " +
+                    "a " + size + " pixels wide image");
+        }
+        img = SyntheticImages.image(size);
+        charSet = new CharSetBrightness(FONT_NAME);
+        boolean allChars = charSetSize == ALL_CHARS_SIZE;
+        firstChar = allChars ? ' ' : '0';
+        for (char c = firstChar; charSet.size() < charSetSize; c++) {
+            if (allChars || Character.isDigit(c) || Character.isLowerCase(c)) {
+                charSet.add(c);
+            }
+        }
+        charSet.toCharArray();
+        charMatcher = new BrightnessImgCharMatcher(img, FONT_NAME);
+        charMatcher.precomputeResolutions(1, size / MIN_PIXELS_PER_CHAR);
+        shapeMatcher = new ShapeImgCharMatcher(charMatcher.getPreparedImage());
+        shapeMatcher.chooseChars(charsInRow, charSet);
+    }
+
+    /**
+     * chooses the chars with the brightness of the tiles already known, as a render in the shell does
+     */
+    @Benchmark
+    public char[][] chooseChars() {
+        return charMatcher.chooseChars(charsInRow, charSet);
+    }
+
+    /**
+     * chooses the chars by the shape of the tiles, with the shapes of the glyphs already known
+     */
+    @Benchmark
+    public char[][] chooseCharsByShape() {
+        return shapeMatcher.chooseChars(charsInRow, charSet);
+    }
+
+    /**
+     * chooses the chars after the char set changed, so its lookup table is rebuilt
+     */
+    @Benchmark
+    public char[][] chooseCharsAfterCharSetChange() {
+        charSet.remove(firstChar);
+        charSet.add(firstChar);
+        return charMatcher.chooseChars(charsInRow, charSet);
+    }
+}
@@ -0,0 +1,123 @@
+package ascii_output;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.CharSetBrightness;
+import image.Image;
+import image.SyntheticImages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of writing converted images: HTML files in every mode, the console with and without colors,
+ * and the terminal output that writes only what changed between two frames.
+ * The chars are a real conversion of a synthetic image, so they have the runs a picture has.
+ * The console is replaced by a stream that discards what is written to it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class OutputBenchmark {
+    private static final String FONT_NAME = "Courier New";
+    private static final int MIN_PIXELS_PER_IMAGE = 256;
+    private static final int PIXELS_PER_CHAR = 2;
+    private static final int CHANGED_ROWS_STEP = 16;
+
+    @Param({"64", "256", "1024", "4096"})
+    public int charsInRow;
+
+    private char[][] chars;
+    private char[][] changedChars;
+    private int[][] colors;
+    private File outputFile;
+    private PrintStream console;
+    private AnsiDeltaAsciiOutput terminal;
+    private boolean changedFrame = false;
+
+    @Setup
+    public void setup() throws IOException {
+        Image img = SyntheticImages.image(Math.max(MIN_PIXELS_PER_IMAGE, charsInRow * PIXELS_PER_CHAR));
+        CharSetBrightness charSet = new CharSetBrightness(FONT_NAME);
+        for(char c = '0' ; c <= '9' ; c++)
+            charSet.add(c);
+        BrightnessImgCharMatcher charMatcher = new BrightnessImgCharMatcher(img, FONT_NAME);
+        chars = charMatcher.chooseChars(charsInRow, charSet);
+        colors = charMatcher.chooseColors(charsInRow);
+        //the next frame of an animation: a few rows changed
+        changedChars = new char[chars.length][];
+        for(int y = 0 ; y < chars.length ; y++) {
+            changedChars[y] = chars[y].clone();
+            if(y % CHANGED_ROWS_STEP == 0)
+                changedChars[y][y % charsInRow] = changedChars[y][y % charsInRow] == '0' ? '1' : '0';
+        }
+        outputFile = File.createTempFile("ascii_art_benchmark", ".html");
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        terminal = new AnsiDeltaAsciiOutput(OutputStream.nullOutputStream());
+        terminal.output(chars);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(console);
+        outputFile.delete();
+    }
+
+    @Benchmark
+    public void html() {
+        new HtmlAsciiOutput(outputFile.getPath(), FONT_NAME).output(chars);
+    }
+
+    @Benchmark
+    public void htmlCollapsedRuns() {
+        new HtmlAsciiOutput(outputFile.getPath(), FONT_NAME, false, true).output(chars);
+    }
+
+    @Benchmark
+    public void htmlGzip() {
+        new HtmlAsciiOutput(outputFile.getPath(), FONT_NAME, true, true).output(chars);
+    }
+
+    @Benchmark
+    public void htmlColors() {
+        new HtmlAsciiOutput(outputFile.getPath(), FONT_NAME).output(chars, colors);
+    }
+
+    @Benchmark
+    public void console() {
+        new ConsoleAsciiOutput().output(chars);
+    }
+
+    @Benchmark
+    public void consoleColors() {
+        new ConsoleAsciiOutput().output(chars, colors);
+    }
+
+    /**
+     * Writes the next frame of an animation, which differs from the last one in a few chars.
+     */
+    @Benchmark
+    public long terminalDelta() {
+        changedFrame = !changedFrame;
+        terminal.output(changedFrame ? changedChars : chars);
+        return terminal.getLastFrameBytes();
+    }
+}
@@ -0,0 +1,97 @@
+package image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of reading the pixels of an image: building a FileImage from a decoded picture, and the
+ * different ways of visiting every pixel (one Color at a time, one packed int at a time, whole rows,
+ * the visitor, and the sub-images of the shell's tiles).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class ImageBenchmark {
+    private static final int TILE_PIXELS = 16;
+
+    @Param({"256", "1024", "4096", "8192"})
+    public int size;
+
+    private BufferedImage picture;
+    private Image img;
+    private int[] row;
+
+    @Setup
+    public void setup() {
+        picture = SyntheticImages.picture(size);
+        img = new FileImage(picture);
+        row = new int[size];
+    }
+
+    @Benchmark
+    public Image fileImageFromPicture() {
+        return new FileImage(picture);
+    }
+
+    @Benchmark
+    public long getPixel() {
+        long sum = 0;
+        for(int y = 0 ; y < size ; y++)
+            for(int x = 0 ; x < size ; x++)
+                sum += img.getPixel(x, y).getRGB();
+        return sum;
+    }
+
+    @Benchmark
+    public long getPixelRgb() {
+        long sum = 0;
+        for(int y = 0 ; y < size ; y++)
+            for(int x = 0 ; x < size ; x++)
+                sum += img.getPixelRgb(x, y);
+        return sum;
+    }
+
+    @Benchmark
+    public long getRowRgb() {
+        long sum = 0;
+        for(int y = 0 ; y < size ; y++) {
+            img.getRowRgb(0, y, size, row, 0);
+            for(int rgb : row)
+                sum += rgb;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long forEachPixelRgb() {
+        long[] sum = new long[1];
+        img.forEachPixelRgb((x, y, rgb) -> sum[0] += rgb);
+        return sum[0];
+    }
+
+    @Benchmark
+    public long imageViewGetPixel() {
+        long sum = 0;
+        for(Image tile : img.squareSubImagesOfSize(TILE_PIXELS)) {
+            for(Color color : tile.pixels())
+                sum += color.getRGB();
+        }
+        return sum;
+    }
+}
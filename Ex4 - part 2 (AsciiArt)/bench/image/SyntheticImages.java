@@ -0,0 +1,52 @@
+package image;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Square images made up in memory, so the benchmarks don't depend on image files or on decoding them.
+ * The pictures mix smooth gradients with noise, so their tiles cover the whole range of brightness
+ * and colors, and are the same on every run.
+ */
+public class SyntheticImages {
+    private static final int NOISE_SEED = 0x41415458;
+    private static final int NOISE_LEVELS = 64;
+
+    private SyntheticImages() {}
+
+    /**
+     * Creates a decoded picture.
+     * @param size the width and height of the picture, in pixels
+     */
+    public static BufferedImage picture(int size) {
+        BufferedImage im = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[size];
+        int noise = NOISE_SEED;
+        for(int y = 0 ; y < size ; y++) {
+            for(int x = 0 ; x < size ; x++) {
+                //xorshift, which is cheap and the same everywhere
+                noise ^= noise << 13;
+                noise ^= noise >>> 17;
+                noise ^= noise << 5;
+                int n = Math.floorMod(noise, NOISE_LEVELS) - NOISE_LEVELS/2;
+                int r = clamp(x * 255 / size + n);
+                int g = clamp(y * 255 / size + n);
+                int b = clamp((x + y) * 255 / (2*size) - n);
+                row[x] = r << 16 | g << 8 | b;
+            }
+            im.setRGB(0, y, size, 1, row, 0, size);
+        }
+        return im;
+    }
+
+    /**
+     * Creates an image, as Image.fromFile would return for the picture.
+     * @param size the width and height of the image, in pixels (a power of 2, so there is no padding)
+     */
+    public static Image image(int size) {
+        return new FileImage(picture(size));
+    }
+
+    private static int clamp(int channel) {
+        return Math.max(0, Math.min(255, channel));
+    }
+}
@@ -0,0 +1,338 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.CharSetBrightness;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * converts many images without the shell. the images are decoded, converted and written by three stages
+ * of threads that pass their results through bounded queues, so a slow stage holds back the faster ones
+ * instead of letting images pile up in memory. all images share one char set, whose glyphs are rendered
+ * only once
+ */
+public class BatchConverter {
+
+    private static final String FONT_NAME = "Courier New";
+    private static final String OUTPUT_FILENAME_FORMAT = "%s_%d.html";
+    private static final String CHARS_SEPARATOR = ",";
+    private static final int MIN_PIXELS_PER_CHAR = 2;
+    private static final int NUM_OF_DECODERS = 2;
+    private static final int QUEUE_CAPACITY_PER_WORKER = 2;
+    private static final int FIRST_CHAR = 0;
+    private static final int SECOND_CHAR = 1;
+
+    private final List<String> imageFiles;
+    private final CharSetBrightness charSet = new CharSetBrightness(FONT_NAME);
+    private final int[] resolutions;
+    private final File outputDirectory;
+    private final int numOfWorkers;
+    private final boolean nativeSize;
+    private final BlockingQueue<DecodedImage> decodedImages;
+    private final BlockingQueue<ConvertedImage> convertedImages;
+    private final AtomicInteger nextImage = new AtomicInteger();
+    private final AtomicInteger filesWritten = new AtomicInteger();
+
+
+    /**
+     * creates a batch of conversions
+     *
+     * @param input           a directory whose files are all converted, or a manifest file listing an image
+     *                        path in every line (relative paths are relative to the manifest)
+     * @param chars           comma separated chars or ranges of chars, as given to the shell's add command
+     * @param resolutions     the numbers of chars in a row to convert every image to
+     * @param outputDirectory the directory to write the HTML files to
+     * @param numOfWorkers    the number of threads that convert images
+     * @throws IOException if the input can't be read
+     */
+    public BatchConverter(String input, String chars, int[] resolutions, String outputDirectory,
+                          int numOfWorkers) throws IOException {
+        this(input, chars, resolutions, outputDirectory, numOfWorkers, false);
+    }
+
+    /**
+     * creates a batch of conversions
+     *
+     * @param input           a directory whose files are all converted, or a manifest file listing an image
+     *                        path in every line (relative paths are relative to the manifest)
+     * @param chars           comma separated chars or ranges of chars, as given to the shell's add command
+     * @param resolutions     the numbers of chars in a row to convert every image to
+     * @param outputDirectory the directory to write the HTML files to
+     * @param numOfWorkers    the number of threads that convert images
+     * @param nativeSize      true to tile the images at their own dimensions instead of padding them to
+     *                        powers of 2
+     * @throws IOException if the input can't be read
+     */
+    public BatchConverter(String input, String chars, int[] resolutions, String outputDirectory,
+                          int numOfWorkers, boolean nativeSize) throws IOException {
+        this.nativeSize = nativeSize;
+        this.imageFiles = listImageFiles(new File(input));
+        this.resolutions = resolutions.clone();
+        this.outputDirectory = new File(outputDirectory);
+        this.numOfWorkers = numOfWorkers;
+        decodedImages = new ArrayBlockingQueue<>(numOfWorkers * QUEUE_CAPACITY_PER_WORKER);
+        convertedImages = new ArrayBlockingQueue<>(numOfWorkers * QUEUE_CAPACITY_PER_WORKER);
+        addChars(charSet, chars);
+    }
+
+    /**
+     * adds chars given as in the command line to a char set
+     *
+     * @param charSet the set to add the chars to
+     * @param chars   comma separated chars or ranges of chars, as given to the shell's add command
+     */
+    static void addChars(CharSetBrightness charSet, String chars) {
+        for (String range : chars.split(CHARS_SEPARATOR)) {
+            char[] limits = Shell.parseCharRange(range);
+            if (limits == null) {
+                throw new IllegalArgumentException("Wrong chars parameter: " + range);
+            }
+            char start = (char) Math.min(limits[FIRST_CHAR], limits[SECOND_CHAR]);
+            char end = (char) Math.max(limits[FIRST_CHAR], limits[SECOND_CHAR]);
+            for (int c = start; c <= end; c++) {
+                charSet.add((char) c);
+            }
+        }
+    }
+
+    /**
+     * runs the conversions and waits for them to end
+     *
+     * @return the number of HTML files written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int run() throws InterruptedException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            Logger.getGlobal().severe("Failed to create output directory " + outputDirectory);
+            return 0;
+        }
+        //build the char set's tables before it is shared between the threads
+        charSet.toCharArray();
+        charSet.save();
+        ExecutorService threads = Executors.newFixedThreadPool(NUM_OF_DECODERS + numOfWorkers + 1);
+        try {
+            List<Future<?>> decoders = submit(threads, NUM_OF_DECODERS, this::decode);
+            List<Future<?>> converters = submit(threads, numOfWorkers, this::convert);
+            Future<?> writer = threads.submit(this::write);
+            await(decoders);
+            for (int i = 0; i < numOfWorkers; i++) {
+                decodedImages.put(DecodedImage.END);
+            }
+            await(converters);
+            convertedImages.put(ConvertedImage.END);
+            await(List.of(writer));
+        } finally {
+            threads.shutdownNow();
+        }
+        return filesWritten.get();
+    }
+
+    /**
+     * the first stage: decodes the images that no other decoder took yet
+     */
+    private void decode() {
+        int i;
+        while ((i = nextImage.getAndIncrement()) < imageFiles.size()) {
+            String filename = imageFiles.get(i);
+            Image img;
+            try {
+                img = nativeSize ? Image.fromFileUnpadded(filename) : Image.fromFile(filename);
+            } catch (RuntimeException e) {
+                Logger.getGlobal().warning("Failed to decode " + filename + ": " + e);
+                continue;
+            }
+            if (img == null) {
+                Logger.getGlobal().warning("Failed to open image file " + filename);
+                continue;
+            }
+            try {
+                decodedImages.put(new DecodedImage(filename, img));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * the second stage: converts decoded images to every resolution, until the end of the images
+     */
+    private void convert() {
+        try {
+            DecodedImage decoded;
+            while ((decoded = decodedImages.take()) != DecodedImage.END) {
+                convertImage(decoded);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * converts one image to every resolution and passes the results to the writer. resolutions that the
+     * image is converted to the same number of chars in a row for are converted once. a failed conversion is
+     * logged and skipped, so the stage keeps taking images and the decoders are never left waiting
+     *
+     * @param decoded the image to convert
+     * @throws InterruptedException if interrupted while waiting for room in the writer's queue
+     */
+    private void convertImage(DecodedImage decoded) throws InterruptedException {
+        BrightnessImgCharMatcher charMatcher;
+        try {
+            charMatcher = new BrightnessImgCharMatcher(decoded.img, FONT_NAME);
+        } catch (RuntimeException e) {
+            Logger.getGlobal().warning("Failed to convert " + decoded.filename + ": " + e);
+            return;
+        }
+        Set<Integer> convertedResolutions = new HashSet<>();
+        for (int numCharsInRow : resolutions) {
+            if (numCharsInRow < 1 || numCharsInRow > decoded.img.getWidth() / MIN_PIXELS_PER_CHAR) {
+                Logger.getGlobal().warning(String.format("Skipping resolution %d of %s",
+                        numCharsInRow, decoded.filename));
+                continue;
+            }
+            int resolvedNumCharsInRow = charMatcher.getPreparedImage().resolveNumCharsInRow(numCharsInRow);
+            if (!convertedResolutions.add(resolvedNumCharsInRow)) {
+                continue;
+            }
+            char[][] chars;
+            try {
+                chars = charMatcher.chooseChars(numCharsInRow, charSet);
+            } catch (RuntimeException e) {
+                Logger.getGlobal().warning("Failed to convert " + decoded.filename + ": " + e);
+                continue;
+            }
+            convertedImages.put(new ConvertedImage(decoded.filename, resolvedNumCharsInRow, chars));
+        }
+    }
+
+    /**
+     * the last stage: writes the converted images, until the end of the conversions
+     */
+    private void write() {
+        try {
+            ConvertedImage converted;
+            while ((converted = convertedImages.take()) != ConvertedImage.END) {
+                //the extension is kept, so images that differ only in their format don't share a file
+                String name = new File(converted.filename).getName();
+                File outputFile = new File(outputDirectory,
+                        String.format(OUTPUT_FILENAME_FORMAT, name, converted.numCharsInRow));
+                try {
+                    HtmlAsciiOutput output = new HtmlAsciiOutput(outputFile.getPath(), FONT_NAME);
+                    output.output(converted.chars);
+                    //the output catches its own IOException, and tells of it only by the bytes it wrote
+                    if (output.getBytesWritten() < 0) {
+                        Logger.getGlobal().warning("Failed to write " + outputFile);
+                    } else {
+                        filesWritten.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    Logger.getGlobal().warning("Failed to write " + outputFile + ": " + e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * lists the images of the input: the files of a directory, sorted, or the lines of a manifest
+     *
+     * @param input a directory or a manifest file
+     * @return the paths of the images
+     * @throws IOException if the input can't be read
+     */
+    private static List<String> listImageFiles(File input) throws IOException {
+        List<String> files = new ArrayList<>();
+        if (input.isDirectory()) {
+            File[] directoryFiles = input.listFiles(File::isFile);
+            if (directoryFiles == null) {
+                throw new IOException("Cannot list " + input);
+            }
+            Arrays.sort(directoryFiles);
+            for (File file : directoryFiles) {
+                files.add(file.getPath());
+            }
+            return files;
+        }
+        Path manifestDirectory = input.toPath().toAbsolutePath().getParent();
+        for (String line : Files.readAllLines(input.toPath())) {
+            if (!line.isBlank()) {
+                files.add(manifestDirectory.resolve(line.trim()).toString());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * submits a number of copies of a task
+     */
+    private static List<Future<?>> submit(ExecutorService threads, int copies, Runnable task) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < copies; i++) {
+            futures.add(threads.submit(task));
+        }
+        return futures;
+    }
+
+    /**
+     * waits for tasks to end, logging the ones that failed
+     */
+    private static void await(List<Future<?>> futures) throws InterruptedException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                Logger.getGlobal().severe("Batch conversion task failed: " + e.getCause());
+            }
+        }
+    }
+
+    /**
+     * an image passed from the decoders to the converters
+     */
+    private static class DecodedImage {
+        private static final DecodedImage END = new DecodedImage(null, null);
+        private final String filename;
+        private final Image img;
+
+        private DecodedImage(String filename, Image img) {
+            this.filename = filename;
+            this.img = img;
+        }
+    }
+
+    /**
+     * a conversion passed from the converters to the writer
+     */
+    private static class ConvertedImage {
+        private static final ConvertedImage END = new ConvertedImage(null, 0, null);
+        private final String filename;
+        private final int numCharsInRow;
+        private final char[][] chars;
+
+        private ConvertedImage(String filename, int numCharsInRow, char[][] chars) {
+            this.filename = filename;
+            this.numCharsInRow = numCharsInRow;
+            this.chars = chars;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package ascii_art;
+
+import ascii_art.img_to_char.CharSetBrightness;
+import ascii_art.img_to_char.PreparedImage;
+import ascii_art.img_to_char.TileCharMatcher;
+import ascii_output.AsciiOutput;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import image.Image;
+
+import java.awt.Dimension;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * converts images sent over HTTP, so tools can share one warm process instead of each starting its own
+ * and rendering the glyphs again. an image is converted by a POST to /convert whose body is the image
+ * file and whose query gives the chars, the resolution and the format, for example
+ * /convert?chars=0-9,a-z&amp;res=64&amp;format=text. with native=true the image is tiled at its own
+ * dimensions instead of padded to powers of 2. the server listens only on the loopback address, and
+ * rejects images wider or higher than MAX_IMAGE_SIDE pixels before decoding them.
+ * the results are kept in a cache of the least recently used conversions, keyed by a hash of the image
+ * and the parameters, and identical requests that arrive while the first of them is being converted
+ * wait for its result instead of converting the image again. GET /stats returns the counters of the
+ * cache as JSON
+ */
+public class ConversionServer {
+
+    private static final String FONT_NAME = "Courier New";
+    private static final String CONVERT_PATH = "/convert";
+    private static final String STATS_PATH = "/stats";
+    private static final String POST_METHOD = "POST";
+    private static final String GET_METHOD = "GET";
+    private static final String CHARS_PARAM = "chars";
+    private static final String RES_PARAM = "res";
+    private static final String FORMAT_PARAM = "format";
+    private static final String NATIVE_PARAM = "native";
+    private static final String TRUE_VALUE = "true";
+    private static final String FALSE_VALUE = "false";
+    private static final String HTML_FORMAT = "html";
+    private static final String TEXT_FORMAT = "text";
+    private static final String DEFAULT_CHARS = "0-9";
+    private static final String HTML_CONTENT_TYPE = "text/html; charset=utf-8";
+    private static final String TEXT_CONTENT_TYPE = "text/plain; charset=utf-8";
+    private static final String JSON_CONTENT_TYPE = "application/json";
+    private static final String CONTENT_TYPE_HEADER = "Content-Type";
+    private static final String CACHE_HEADER = "X-Cache";
+    private static final String CACHE_HIT = "hit";
+    private static final String CACHE_MISS = "miss";
+    private static final String CACHE_COALESCED = "coalesced";
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final String KEY_SEPARATOR = "|";
+    private static final String QUERY_SEPARATOR = "&";
+    private static final String VALUE_SEPARATOR = "=";
+    private static final int MIN_PIXELS_PER_CHAR = 2;
+    private static final int MAX_IMAGE_BYTES = 64 << 20;
+    //padding may double each side, so a padded image has at most 64M pixels
+    private static final int MAX_IMAGE_SIDE = 4096;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final int STATUS_OK = 200;
+    private static final int STATUS_BAD_REQUEST = 400;
+    private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+    private static final int STATUS_TOO_LARGE = 413;
+    private static final int STATUS_SERVER_ERROR = 500;
+    private static final int STOP_DELAY_SECONDS = 1;
+    //keeps nothing between conversions, so all the worker threads share it
+    private static final TileCharMatcher MATCHER = new TileCharMatcher();
+
+    private final HttpServer server;
+    private final ExecutorService threads;
+    private final Map<String, byte[]> cache;
+    private final Map<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+
+    /**
+     * creates a server on a port of the loopback address. it doesn't accept requests until it is started
+     *
+     * @param port          the port to listen on, or 0 for any free port
+     * @param cacheCapacity the number of conversions to keep
+     * @param numOfWorkers  the number of threads that handle requests
+     * @throws IOException if the port can't be bound
+     */
+    public ConversionServer(int port, int cacheCapacity, int numOfWorkers) throws IOException {
+        if (cacheCapacity < 0 || numOfWorkers < 1) {
+            throw new IllegalArgumentException("cache capacity must not be negative and workers must be " +
+                    "positive: " + cacheCapacity + ", " + numOfWorkers);
+        }
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > cacheCapacity;
+            }
+        };
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        threads = Executors.newFixedThreadPool(numOfWorkers);
+        server.setExecutor(threads);
+        server.createContext(CONVERT_PATH, this::handleConvert);
+        server.createContext(STATS_PATH, this::handleStats);
+    }
+
+    /**
+     * starts accepting requests, in the server's threads
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * stops accepting requests, and stops the server's threads after the requests being handled end
+     */
+    public void stop() {
+        server.stop(STOP_DELAY_SECONDS);
+        threads.shutdown();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * converts an image, or returns its conversion from the cache or from an identical request that is
+     * being converted
+     *
+     * @param exchange the request and its response
+     * @throws IOException if the response can't be written
+     */
+    private void handleConvert(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals(POST_METHOD)) {
+                sendText(exchange, STATUS_METHOD_NOT_ALLOWED, "Use POST with the image as the body\n");
+                return;
+            }
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            String chars = params.getOrDefault(CHARS_PARAM, DEFAULT_CHARS);
+            String format = params.getOrDefault(FORMAT_PARAM, HTML_FORMAT);
+            int numCharsInRow;
+            try {
+                numCharsInRow = Integer.parseInt(params.get(RES_PARAM));
+            } catch (NumberFormatException e) {
+                sendText(exchange, STATUS_BAD_REQUEST, "Wrong parameter. Valid usage: res=<chars in row>\n");
+                return;
+            }
+            if (!format.equals(HTML_FORMAT) && !format.equals(TEXT_FORMAT)) {
+                sendText(exchange, STATUS_BAD_REQUEST, "Wrong parameter. Valid usage: format=<html,text>\n");
+                return;
+            }
+            String nativeValue = params.getOrDefault(NATIVE_PARAM, FALSE_VALUE);
+            if (!nativeValue.equals(TRUE_VALUE) && !nativeValue.equals(FALSE_VALUE)) {
+                sendText(exchange, STATUS_BAD_REQUEST, "Wrong parameter. Valid usage: native=<true,false>\n");
+                return;
+            }
+            boolean nativeSize = nativeValue.equals(TRUE_VALUE);
+            byte[] imageBytes = readBody(exchange.getRequestBody());
+            if (imageBytes == null) {
+                sendText(exchange, STATUS_TOO_LARGE,
+                        "The image is larger than " + MAX_IMAGE_BYTES + " bytes\n");
+                return;
+            }
+            String key = hash(imageBytes) + KEY_SEPARATOR + chars + KEY_SEPARATOR + numCharsInRow +
+                    KEY_SEPARATOR + format + KEY_SEPARATOR + nativeSize;
+            byte[] result;
+            String cacheStatus;
+            synchronized (cache) {
+                result = cache.get(key);
+            }
+            if (result != null) {
+                hits.incrementAndGet();
+                cacheStatus = CACHE_HIT;
+            } else {
+                CompletableFuture<byte[]> conversion = new CompletableFuture<>();
+                CompletableFuture<byte[]> running = inFlight.putIfAbsent(key, conversion);
+                if (running == null) {
+                    //the conversion that was in flight may have been cached and removed since the first look
+                    synchronized (cache) {
+                        result = cache.get(key);
+                    }
+                    if (result != null) {
+                        hits.incrementAndGet();
+                        cacheStatus = CACHE_HIT;
+                        conversion.complete(result);
+                        inFlight.remove(key);
+                    } else {
+                        misses.incrementAndGet();
+                        cacheStatus = CACHE_MISS;
+                        convertAndCache(key, imageBytes, chars, numCharsInRow, format, nativeSize,
+                                conversion);
+                    }
+                    running = conversion;
+                } else {
+                    coalesced.incrementAndGet();
+                    cacheStatus = CACHE_COALESCED;
+                }
+                try {
+                    result = running.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    sendText(exchange, STATUS_SERVER_ERROR, "Interrupted\n");
+                    return;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IllegalArgumentException) {
+                        sendText(exchange, STATUS_BAD_REQUEST, cause.getMessage() + "\n");
+                    } else {
+                        sendText(exchange, STATUS_SERVER_ERROR, "Failed to convert the image\n");
+                    }
+                    return;
+                }
+            }
+            exchange.getResponseHeaders().set(CONTENT_TYPE_HEADER,
+                    format.equals(HTML_FORMAT) ? HTML_CONTENT_TYPE : TEXT_CONTENT_TYPE);
+            exchange.getResponseHeaders().set(CACHE_HEADER, cacheStatus);
+            send(exchange, STATUS_OK, result);
+        }
+    }
+
+    /**
+     * converts an image for the first of the identical requests, and passes the result to the ones waiting
+     * for it. the result is cached before the conversion stops being in flight, and a request that starts
+     * a conversion looks in the cache again, so an image isn't converted twice. any failure, even an
+     * error such as running out of memory, is passed to the waiting requests so none of them hangs
+     */
+    private void convertAndCache(String key, byte[] imageBytes, String chars, int numCharsInRow,
+                                 String format, boolean nativeSize, CompletableFuture<byte[]> conversion) {
+        try {
+            byte[] result = convert(imageBytes, chars, numCharsInRow, format, nativeSize);
+            synchronized (cache) {
+                cache.put(key, result);
+            }
+            conversion.complete(result);
+        } catch (Throwable e) {
+            if (!(e instanceof IllegalArgumentException)) {
+                Logger.getGlobal().warning("Failed to convert an image: " + e);
+            }
+            conversion.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    /**
+     * converts an image to chars and writes them in a format
+     *
+     * @param imageBytes    the contents of an image file
+     * @param chars         comma separated chars or ranges of chars, as given to the shell's add command
+     * @param numCharsInRow the number of chars in a row
+     * @param format        html or text
+     * @param nativeSize    true to tile the image at its own dimensions instead of padding it
+     * @return the written chars
+     * @throws IllegalArgumentException if the image or the parameters are not valid, or the image is
+     *                                  larger than MAX_IMAGE_SIDE
+     */
+    private static byte[] convert(byte[] imageBytes, String chars, int numCharsInRow, String format,
+                                  boolean nativeSize) {
+        Dimension size = Image.sizeOfBytes(imageBytes);
+        if (size == null) {
+            throw new IllegalArgumentException("Failed to decode the image");
+        }
+        if (size.width > MAX_IMAGE_SIDE || size.height > MAX_IMAGE_SIDE) {
+            throw new IllegalArgumentException("The image must be at most " + MAX_IMAGE_SIDE + " by " +
+                    MAX_IMAGE_SIDE + " pixels, not " + size.width + " by " + size.height);
+        }
+        Image img = nativeSize ? Image.fromBytesUnpadded(imageBytes) : Image.fromBytes(imageBytes);
+        if (img == null) {
+            throw new IllegalArgumentException("Failed to decode the image");
+        }
+        if (numCharsInRow < 1 || numCharsInRow > img.getWidth() / MIN_PIXELS_PER_CHAR) {
+            throw new IllegalArgumentException("The resolution must be between 1 and " +
+                    img.getWidth() / MIN_PIXELS_PER_CHAR);
+        }
+        CharSetBrightness charSet = new CharSetBrightness(FONT_NAME);
+        BatchConverter.addChars(charSet, chars);
+        charSet.save();
+        if (charSet.size() == 0) {
+            throw new IllegalArgumentException("The char set is empty");
+        }
+        char[][] asciiArt = MATCHER.chooseChars(new PreparedImage(img), numCharsInRow, charSet);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsciiOutput output = format.equals(HTML_FORMAT) ? new HtmlAsciiOutput(out, FONT_NAME) :
+                new ConsoleAsciiOutput(out);
+        output.output(asciiArt);
+        return out.toByteArray();
+    }
+
+    /**
+     * returns the counters of the cache
+     *
+     * @param exchange the request and its response
+     * @throws IOException if the response can't be written
+     */
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals(GET_METHOD)) {
+                sendText(exchange, STATUS_METHOD_NOT_ALLOWED, "Use GET\n");
+                return;
+            }
+            int entries;
+            synchronized (cache) {
+                entries = cache.size();
+            }
+            String json = String.format("{\"hits\":%d,\"misses\":%d,\"coalesced\":%d,\"entries\":%d," +
+                            "\"inFlight\":%d}\n", hits.get(), misses.get(), coalesced.get(), entries,
+                    inFlight.size());
+            exchange.getResponseHeaders().set(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE);
+            send(exchange, STATUS_OK, json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * reads the body of a request
+     *
+     * @param body the body
+     * @return the bytes of the body, or null if it is longer than MAX_IMAGE_BYTES
+     * @throws IOException if the body can't be read
+     */
+    private static byte[] readBody(InputStream body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            if (bytes.size() + read > MAX_IMAGE_BYTES) {
+                return null;
+            }
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * parses the parameters of a query, such as chars=0-9&amp;res=64
+     *
+     * @param query the raw query, or null if there is none
+     * @return the decoded value of every parameter
+     */
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String param : query.split(QUERY_SEPARATOR)) {
+            String[] nameAndValue = param.split(VALUE_SEPARATOR, 2);
+            if (nameAndValue.length == 2) {
+                params.put(URLDecoder.decode(nameAndValue[0], StandardCharsets.UTF_8),
+                        URLDecoder.decode(nameAndValue[1], StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * @param data the bytes to hash
+     * @return the SHA-256 hash of the bytes, in hex
+     */
+    private static String hash(byte[] data) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(HASH_ALGORITHM + " is not available", e);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest(data)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        exchange.getResponseHeaders().set(CONTENT_TYPE_HEADER, TEXT_CONTENT_TYPE);
+        send(exchange, status, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
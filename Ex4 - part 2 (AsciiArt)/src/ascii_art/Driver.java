@@ -1,13 +1,65 @@
 package ascii_art;
 
+import ascii_art.img_to_char.AnimationCharMatcher;
+import ascii_art.img_to_char.CharSetBrightness;
+import ascii_art.img_to_char.PreparedImage;
+import ascii_art.img_to_char.TileCharMatcher;
+import ascii_output.AnsiDeltaAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import image.FrameSequence;
 import image.Image;
+import image.StreamingFileImage;
 
+import java.io.File;
+import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 /**
  * Runs the program.
  */
 public class Driver {
+    private static final String BATCH_FLAG = "--batch";
+    private static final String BATCH_USAGE = "USAGE: java asciiArt --batch [--native] <directory or " +
+            "manifest> <chars, e.g. 0-9,a-z> <chars in row, e.g. 64,128> <output directory> [workers]";
+    private static final String RESOLUTIONS_SEPARATOR = ",";
+    private static final String BATCH_DONE_MSG = "Wrote %d files\n";
+    private static final int MIN_BATCH_ARGS = 5;
+    private static final int MAX_BATCH_ARGS = 6;
+    private static final String FRAMES_FLAG = "--frames";
+    private static final String FRAMES_USAGE = "USAGE: java asciiArt --frames [--native] <gif or directory " +
+            "of frames> <chars, e.g. 0-9,a-z> <chars in row> <output directory, or - for the terminal> " +
+            "[change threshold]";
+    private static final String FRAME_FILENAME_FORMAT = "frame_%05d.html";
+    private static final String FRAMES_DONE_MSG = "Wrote %d frames, %.1f%% of the tiles kept their char\n";
+    private static final String TERMINAL_OUTPUT = "-";
+    private static final String TERMINAL_DONE_MSG = "Played %d frames in %d bytes (%d bytes per frame)\n";
+    private static final String FONT_NAME = "Courier New";
+    private static final int MIN_FRAMES_ARGS = 5;
+    private static final int MAX_FRAMES_ARGS = 6;
+    private static final double PERCENT = 100.0;
+    private static final String NATIVE_FLAG = "--native";
+    private static final String SCRIPT_FLAG = "--script";
+    private static final String STDIN_SCRIPT = "-";
+    private static final String SERVE_FLAG = "--serve";
+    private static final String SERVE_USAGE =
+            "USAGE: java asciiArt --serve <port> [cached conversions] [workers]";
+    private static final String SERVE_STARTED_MSG = "Listening on http://localhost:%d/convert\n";
+    private static final int MIN_SERVE_ARGS = 2;
+    private static final int MAX_SERVE_ARGS = 4;
+    private static final int DEFAULT_CACHE_CAPACITY = 256;
+    private static final String STREAM_FLAG = "--stream";
+    private static final String STREAM_USAGE = "USAGE: java asciiArt --stream <image> " +
+            "<chars, e.g. 0-9,a-z> <chars in row> <output file> [subsampling]";
+    private static final String STREAM_DONE_MSG = "Wrote %d rows of %d chars to %s\n";
+    private static final int MIN_STREAM_ARGS = 5;
+    private static final int MAX_STREAM_ARGS = 6;
+    private static final String RESOLUTION_RANGE_MSG =
+            "The number of chars in a row must be between 1 and %d for %s\n";
+    private static final int MIN_PIXELS_PER_CHAR = 2;
+
     /**
      * receives img path from the user in the command line and runs the shell
      *
@@ -15,15 +67,265 @@ public class Driver {
      * @throws Exception if the program failed
      */
     public static void main(String[] args) throws Exception {
-        if (args.length != 1) {
-            System.err.println("USAGE: java asciiArt ");
+        if (args.length > 0 && args[0].equals(BATCH_FLAG)) {
+            runBatch(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(FRAMES_FLAG)) {
+            runFrames(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(SERVE_FLAG)) {
+            runServer(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(STREAM_FLAG)) {
+            runStream(args);
+            return;
+        }
+        //with the script flag the commands are read from a file (or from stdin for -) without prompts
+        String script = null;
+        if (args.length > 1 && args[0].equals(SCRIPT_FLAG)) {
+            script = args[1];
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        //with the native flag the image is tiled at its own dimensions instead of padded to powers of 2
+        boolean nativeSize = args.length == 2 && args[0].equals(NATIVE_FLAG);
+        if (args.length != 1 && !nativeSize) {
+            System.err.println("USAGE: java asciiArt [--script <file or ->] [--native] <image>");
             return;
         }
-        Image img = Image.fromFile(args[0]);
+        String imagePath = args[args.length - 1];
+        Image img = nativeSize ? Image.fromFileUnpadded(imagePath) : Image.fromFile(imagePath);
         if (img == null) {
-            Logger.getGlobal().severe("Failed to open image file " + args[0]);
+            Logger.getGlobal().severe("Failed to open image file " + imagePath);
             return;
         }
-        new Shell(img).run();
+        if (script == null) {
+            new Shell(img).run();
+        } else if (script.equals(STDIN_SCRIPT)) {
+            new Shell(img).runScript(new InputStreamReader(System.in));
+        } else {
+            try (Reader reader = new FileReader(script)) {
+                new Shell(img).runScript(reader);
+            }
+        }
+    }
+
+    /**
+     * @param args the arguments of a mode, starting with its flag
+     * @return true if the mode's flag is followed by the native flag
+     */
+    private static boolean hasNativeFlag(String[] args) {
+        return args.length > 1 && args[1].equals(NATIVE_FLAG);
+    }
+
+    /**
+     * @param args the arguments of a mode, starting with its flag
+     * @return the arguments without the native flag that follows the mode's flag, if it is there
+     */
+    private static String[] withoutNativeFlag(String[] args) {
+        if (!hasNativeFlag(args)) {
+            return args;
+        }
+        String[] remaining = new String[args.length - 1];
+        remaining[0] = args[0];
+        System.arraycopy(args, 2, remaining, 1, args.length - 2);
+        return remaining;
+    }
+
+    /**
+     * @param arg an argument that should be a positive number
+     * @return the number, or -1 if the argument is not a positive number
+     */
+    private static int parsePositive(String arg) {
+        try {
+            return Math.max(-1, Integer.parseInt(arg));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param arg an argument that should be a change threshold
+     * @return the threshold, or NaN if the argument is not a number
+     */
+    private static double parseThreshold(String arg) {
+        try {
+            return Double.parseDouble(arg);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * checks the number of chars in a row the user asked for against the width of an image, the way the
+     * shell limits it, and prints the valid range if it is out of it
+     *
+     * @param numCharsInRow the number of chars in a row the user asked for
+     * @param img           the image to convert
+     * @param name          the name of the image, for the message
+     * @return true if the image can be converted to that number of chars in a row
+     */
+    private static boolean isResolutionInRange(int numCharsInRow, Image img, String name) {
+        int maxCharsInRow = img.getWidth() / MIN_PIXELS_PER_CHAR;
+        if (numCharsInRow >= 1 && numCharsInRow <= maxCharsInRow) {
+            return true;
+        }
+        System.err.printf(RESOLUTION_RANGE_MSG, maxCharsInRow, name);
+        return false;
+    }
+
+    /**
+     * runs a batch conversion without the shell
+     *
+     * @param args the batch flag, optionally the native flag, and the input, chars, resolutions, output
+     *             directory and optionally the number of workers
+     * @throws Exception if the batch failed
+     */
+    private static void runBatch(String[] args) throws Exception {
+        boolean nativeSize = hasNativeFlag(args);
+        args = withoutNativeFlag(args);
+        if (args.length < MIN_BATCH_ARGS || args.length > MAX_BATCH_ARGS) {
+            System.err.println(BATCH_USAGE);
+            return;
+        }
+        String[] resolutionStrings = args[3].split(RESOLUTIONS_SEPARATOR);
+        int[] resolutions = new int[resolutionStrings.length];
+        for (int i = 0; i < resolutions.length; i++) {
+            resolutions[i] = Integer.parseInt(resolutionStrings[i].trim());
+        }
+        int numOfWorkers = args.length == MAX_BATCH_ARGS ? Integer.parseInt(args[5]) :
+                Runtime.getRuntime().availableProcessors();
+        int filesWritten =
+                new BatchConverter(args[1], args[2], resolutions, args[4], numOfWorkers, nativeSize).run();
+        System.out.printf(BATCH_DONE_MSG, filesWritten);
+    }
+
+    /**
+     * runs the conversion server until the process is stopped
+     *
+     * @param args the serve flag followed by the port and optionally the number of conversions to cache and
+     *             the number of workers
+     * @throws Exception if the server failed to start
+     */
+    private static void runServer(String[] args) throws Exception {
+        if (args.length < MIN_SERVE_ARGS || args.length > MAX_SERVE_ARGS) {
+            System.err.println(SERVE_USAGE);
+            return;
+        }
+        int cacheCapacity =
+                args.length > MIN_SERVE_ARGS ? Integer.parseInt(args[2]) : DEFAULT_CACHE_CAPACITY;
+        int numOfWorkers = args.length == MAX_SERVE_ARGS ? Integer.parseInt(args[3]) :
+                Runtime.getRuntime().availableProcessors();
+        int port = Integer.parseInt(args[1]);
+        ConversionServer server = new ConversionServer(port, cacheCapacity, numOfWorkers);
+        server.start();
+        System.out.printf(SERVE_STARTED_MSG, server.getPort());
+    }
+
+    /**
+     * converts an image too large to decode whole. the image is decoded in strips of rows as it is read, and
+     * the brightness of its tiles is summed a row of tiles at a time, so the memory used doesn't grow with
+     * the number of pixels
+     *
+     * @param args the stream flag followed by the image, chars, chars in a row, output file and optionally
+     *             the subsampling to decode the image with
+     * @throws Exception if the conversion failed
+     */
+    private static void runStream(String[] args) throws Exception {
+        if (args.length < MIN_STREAM_ARGS || args.length > MAX_STREAM_ARGS) {
+            System.err.println(STREAM_USAGE);
+            return;
+        }
+        int numCharsInRow = parsePositive(args[3]);
+        int subsampling = args.length == MAX_STREAM_ARGS ? parsePositive(args[5]) : 1;
+        if (numCharsInRow < 1 || subsampling < 1) {
+            System.err.println(STREAM_USAGE);
+            return;
+        }
+        CharSetBrightness charSet = new CharSetBrightness(FONT_NAME);
+        BatchConverter.addChars(charSet, args[2]);
+        charSet.save();
+        StreamingFileImage img = Image.fromFileStreaming(args[1], subsampling);
+        if (img == null) {
+            Logger.getGlobal().severe("Failed to open image file " + args[1]);
+            return;
+        }
+        char[][] chars;
+        try (img) {
+            if (!isResolutionInRange(numCharsInRow, img, args[1])) {
+                return;
+            }
+            chars = new TileCharMatcher().chooseChars(PreparedImage.streamed(img), numCharsInRow, charSet);
+        }
+        new HtmlAsciiOutput(args[4], FONT_NAME).output(chars);
+        System.out.printf(STREAM_DONE_MSG, chars.length, chars.length == 0 ? 0 : chars[0].length, args[4]);
+    }
+
+    /**
+     * converts the frames of an animation to HTML files, one per frame, keeping the chars of the tiles that
+     * barely changed between frames
+     *
+     * @param args the frames flag, optionally the native flag, and the animation, chars, chars in a row,
+     *             output directory and optionally the change threshold
+     * @throws Exception if the conversion failed
+     */
+    private static void runFrames(String[] args) throws Exception {
+        boolean nativeSize = hasNativeFlag(args);
+        args = withoutNativeFlag(args);
+        if (args.length < MIN_FRAMES_ARGS || args.length > MAX_FRAMES_ARGS) {
+            System.err.println(FRAMES_USAGE);
+            return;
+        }
+        int numCharsInRow = parsePositive(args[3]);
+        double changeThreshold = args.length == MAX_FRAMES_ARGS ? parseThreshold(args[5]) : 0;
+        if (numCharsInRow < 1 || !(changeThreshold >= 0)) {
+            System.err.println(FRAMES_USAGE);
+            return;
+        }
+        CharSetBrightness charSet = new CharSetBrightness(FONT_NAME);
+        BatchConverter.addChars(charSet, args[2]);
+        charSet.save();
+        File outputDirectory = new File(args[4]);
+        AnsiDeltaAsciiOutput terminal = args[4].equals(TERMINAL_OUTPUT) ? new AnsiDeltaAsciiOutput() : null;
+        if (terminal == null && !outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            Logger.getGlobal().severe("Failed to create output directory " + outputDirectory);
+            return;
+        }
+        AnimationCharMatcher charMatcher = new AnimationCharMatcher(charSet);
+        charMatcher.setChangeThreshold(changeThreshold);
+        FrameSequence frames =
+                nativeSize ? Image.framesFromFileUnpadded(args[1]) : Image.framesFromFile(args[1]);
+        if (frames == null) {
+            Logger.getGlobal().severe("Failed to open animation " + args[1]);
+            return;
+        }
+        int numOfFrames = 0;
+        long tiles = 0, reusedTiles = 0;
+        try (frames) {
+            while (frames.hasNext()) {
+                Image frame = frames.next();
+                if (!isResolutionInRange(numCharsInRow, frame, "frame " + numOfFrames + " of " + args[1])) {
+                    return;
+                }
+                char[][] chars = charMatcher.chooseChars(frame, numCharsInRow, frames.getChangedRegion());
+                if (terminal != null) {
+                    terminal.output(chars);
+                } else {
+                    File outputFile =
+                            new File(outputDirectory, String.format(FRAME_FILENAME_FORMAT, numOfFrames));
+                    new HtmlAsciiOutput(outputFile.getPath(), FONT_NAME).output(chars);
+                }
+                numOfFrames++;
+                tiles += (long) chars.length * (chars.length == 0 ? 0 : chars[0].length);
+                reusedTiles += charMatcher.getReusedTiles();
+            }
+        }
+        System.out.printf(FRAMES_DONE_MSG, numOfFrames, tiles == 0 ? 0 : PERCENT * reusedTiles / tiles);
+        if (terminal != null) {
+            System.out.printf(TERMINAL_DONE_MSG, numOfFrames, terminal.getTotalBytes(),
+                    numOfFrames == 0 ? 0 : terminal.getTotalBytes() / numOfFrames);
+        }
     }
 }
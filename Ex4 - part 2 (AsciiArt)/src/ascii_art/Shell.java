@@ -1,31 +1,48 @@
 package ascii_art;
 
 import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.CharSetBrightness;
+import ascii_art.img_to_char.RenderStats;
+import ascii_art.img_to_char.ShapeImgCharMatcher;
 import ascii_output.AsciiOutput;
+import ascii_output.ColorAsciiOutput;
 import ascii_output.ConsoleAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
 import image.Image;
 
+import java.io.Reader;
+import java.util.BitSet;
 import java.util.Scanner;
-import java.util.*;
 
 /**
- * a class that creates and runs a shell type of console.
+ * a class that creates and runs a shell type of console. the commands are read from the console or from a
+ * script, and only render does any work on the image: add and remove only mark the chars the set should
+ * have, and the set is brought up to date once, when it is rendered, so a long run of commands renders
+ * the glyphs of just the chars that end up in the set and rebuilds its lookup table once.
  */
 public class Shell {
 
-
-    private final Scanner scanner = new Scanner(System.in);
-
     private static final String WRONG_INPUT_MSG = "Wrong input, enter a valid command and parameter or " +
             "just a command. Valid commands: <add,remove> <<char>-<char>,<char>,space,all>, res <up,down>, " +
-            "chars, render, console, html";
+            "chars, render, console, html [gzip] [collapse], color, shape, dither, workers <number>, " +
+            "stats [json]";
     private static final String WRONG_PARAMETER_MSG = "Wrong parameter. Valid usage:<add,remove> " +
             "<<char>-<char>,<char>,space,all>";
     private static final String WRONG_RES_INPUT_MSG = "Wrong parameter. Valid usage: res <up,down>";
+    private static final String WRONG_STATS_INPUT_MSG = "Wrong parameter. Valid usage: stats [json]";
+    private static final String WRONG_HTML_INPUT_MSG = "Wrong parameter. Valid usage: html [gzip] [collapse]";
+    private static final String WRONG_WORKERS_INPUT_MSG = "Wrong parameter. Valid usage: workers <number>";
     private static final String MINIMUM_RES_MSG = "The resolution is at its minimum";
     private static final String MAXIMUM_RES_MSG = "The resolution is at its maximum";
     private static final String RES_CHANGE_MSG = "Width set to %d\n";
+    private static final String COLOR_CHANGE_MSG = "Colors %s\n";
+    private static final String SHAPE_CHANGE_MSG = "Shape matching %s\n";
+    private static final String DITHER_CHANGE_MSG = "Dithering %s\n";
+    private static final String DITHER_IN_SHAPE_MSG = "Dithering applies only to matching by brightness, " +
+            "turn shape matching off first";
+    private static final String WORKERS_CHANGE_MSG = "Workers set to %d\n";
+    private static final String ON = "on";
+    private static final String OFF = "off";
 
     private static final String UP_COMMAND = "up";
     private static final String DOWN_COMMAND = "down";
@@ -34,6 +51,16 @@ public class Shell {
     private static final String RES_COMMAND = "res";
     private static final String CHARS_COMMAND = "chars";
     private static final String CONSOLE_COMMAND = "console";
+    private static final String HTML_COMMAND = "html";
+    private static final String GZIP_OPTION = "gzip";
+    private static final String COLLAPSE_OPTION = "collapse";
+    private static final String COLOR_COMMAND = "color";
+    private static final String SHAPE_COMMAND = "shape";
+    private static final String DITHER_COMMAND = "dither";
+    private static final String STATS_COMMAND = "stats";
+    private static final String WORKERS_COMMAND = "workers";
+    private static final String WORKERS_PATTERN = "[1-9][0-9]{0,3}";
+    private static final String JSON_COMMAND = "json";
     private static final String ADD_COMMAND = "add";
     private static final String RENDER_COMMAND = "render";
     private static final String REMOVE_COMMAND = "remove";
@@ -42,6 +69,7 @@ public class Shell {
 
     private static final String FONT_NAME = "Courier New";
     private static final String OUTPUT_FILENAME = "out.html";
+    private static final String GZIP_OUTPUT_FILENAME = "out.html.gz";
     private static final int FIRST_CHAR_INDEX = 0;
     private static final int SECOND_CHAR_INDEX = 2;
     private static final int FIRST_CHAR = 0;
@@ -49,7 +77,11 @@ public class Shell {
     private static final int COMMAND = 0;
     private static final int PARAM = 1;
 
-    private final Set<Character> charSet = new HashSet<>();
+    private final CharSetBrightness charSet = new CharSetBrightness(FONT_NAME);
+    private final BitSet requestedChars = new BitSet();
+    //the chars the set has, so bringing it up to date only changes the difference without reading the set
+    private final BitSet appliedChars = new BitSet();
+    private boolean charsChanged = false;
     private static final char[] ALL_CHARS_RANGE = new char[]{' ', '~'};
     private static final char[] SPACE = new char[]{' ', ' '};
     private static final String SPACE_REGEX = " ";
@@ -58,12 +90,17 @@ public class Shell {
     private static final int INITIAL_CHARS_IN_ROW = 64;
     private static final int MIN_PIXELS_PER_CHAR = 2;
 
+    private final Image img;
     private final BrightnessImgCharMatcher charMatcher;
+    private ShapeImgCharMatcher shapeMatcher = null;
     private final int minCharsInRow;
     private final int maxCharsInRow;
 
     private AsciiOutput output;
     private int charsInRow;
+    private boolean colors = false;
+    private boolean shapes = false;
+    private boolean dithering = false;
 
 
     /**
@@ -72,22 +109,56 @@ public class Shell {
      * @param img the img to transform into ASCII representation
      */
     public Shell(Image img) {
+        this.img = img;
         minCharsInRow = Math.max(1, img.getWidth() / img.getHeight());
         maxCharsInRow = img.getWidth() / MIN_PIXELS_PER_CHAR;
         charsInRow = Math.max(Math.min(INITIAL_CHARS_IN_ROW, maxCharsInRow), minCharsInRow);
         charMatcher = new BrightnessImgCharMatcher(img, FONT_NAME);
+        //an image narrower than 2 chars has no resolutions to prepare
+        if (maxCharsInRow >= minCharsInRow) {
+            charMatcher.precomputeResolutions(minCharsInRow, maxCharsInRow);
+        }
         output = new HtmlAsciiOutput(OUTPUT_FILENAME, FONT_NAME);
         manipulateChars(INITIAL_CHARS_RANGE, true);
     }
 
     /**
-     * prints out all the chars in the hash map in a sorted order
+     * prints out all the chars in the char set in a sorted order
      */
     private void showChars() {
-        charSet.stream().sorted().forEach(aChar -> System.out.print(aChar + " "));
+        for (int c = requestedChars.nextSetBit(0); c >= 0; c = requestedChars.nextSetBit(c + 1)) {
+            System.out.print((char) c + " ");
+        }
         System.out.println();
     }
 
+    /**
+     * brings the char set up to date with the chars added and removed since it was last rendered. chars that
+     * were added and removed again in between are never rendered, and only the chars that differ from the
+     * ones already applied are added or removed, so the set's tables are built once, by the render
+     */
+    private void applyCharChanges() {
+        if (!charsChanged) {
+            return;
+        }
+        charsChanged = false;
+        BitSet removed = (BitSet) appliedChars.clone();
+        removed.andNot(requestedChars);
+        BitSet added = (BitSet) requestedChars.clone();
+        added.andNot(appliedChars);
+        for (int c = removed.nextSetBit(0); c >= 0; c = removed.nextSetBit(c + 1)) {
+            charSet.remove((char) c);
+        }
+        for (int c = added.nextSetBit(0); c >= 0; c = added.nextSetBit(c + 1)) {
+            charSet.add((char) c);
+        }
+        appliedChars.clear();
+        appliedChars.or(requestedChars);
+        if (!added.isEmpty()) {
+            charSet.save();
+        }
+    }
+
     /**
      * checks if the command is valid and calls a helper function that changes the resolution according to the
      * command given
@@ -140,7 +211,17 @@ public class Shell {
             System.out.println(WRONG_PARAMETER_MSG);
             return null;
         }
-        String command = commands[PARAM];
+        return parseCharRange(commands[PARAM]);
+    }
+
+    /**
+     * parses the parameter of an add or remove command: a single char, a range of chars such as a-z, "all"
+     * or "space"
+     *
+     * @param command the parameter to parse
+     * @return an array of the 2 chars that limit the sequence, or null if the parameter is not valid
+     */
+    static char[] parseCharRange(String command) {
         if (command.length() == 1) {
             return new char[]{command.charAt(FIRST_CHAR_INDEX), command.charAt(FIRST_CHAR_INDEX)};
         }
@@ -182,25 +263,20 @@ public class Shell {
     }
 
     /**
-     * adds a sequence of chars to the chars set
+     * marks a sequence of chars to be added to the chars set, or removed from it, when it is next rendered
      *
      * @param start       the char to start with
      * @param end         the last char to add
      * @param addOrRemove tells the function to add the sequence or remove the sequence
      */
     private void CharsHelper(char start, char end, String addOrRemove) {
+        charsChanged = true;
         switch (addOrRemove) {
             case ADD_COMMAND:
-                while (start <= end) {
-                    charSet.add(start);
-                    start++;
-                }
+                requestedChars.set(start, end + 1);
                 break;
             case REMOVE_COMMAND:
-                while (start <= end) {
-                    charSet.remove(start);
-                    start++;
-                }
+                requestedChars.clear(start, end + 1);
         }
     }
 
@@ -210,16 +286,117 @@ public class Shell {
      * to an HTML file
      */
     private void render() {
+        applyCharChanges();
         if (charSet.size() == 0) {
             return;
         }
-        Character[] charsArray = new Character[charSet.size()];
-        charsArray = charSet.toArray(charsArray);
-        output.output(charMatcher.chooseChars(charsInRow, charsArray));
+        if (shapes && shapeMatcher == null) {
+            shapeMatcher = new ShapeImgCharMatcher(charMatcher.getPreparedImage());
+        }
+        char[][] chars = shapes ? shapeMatcher.chooseChars(charsInRow, charSet) :
+                charMatcher.chooseChars(charsInRow, charSet);
+        int[][] charColors = colors && output instanceof ColorAsciiOutput ?
+                charMatcher.chooseColors(charsInRow) : null;
+        long start = System.nanoTime();
+        if (charColors != null) {
+            ((ColorAsciiOutput) output).output(chars, charColors);
+        } else {
+            output.output(chars);
+        }
+        currentStats().addOutput(System.nanoTime() - start, output.getBytesWritten());
+    }
+
+    /**
+     * @return the stats of the matcher that renders the image, by brightness or by shape
+     */
+    private RenderStats currentStats() {
+        return shapes && shapeMatcher != null ? shapeMatcher.getStats() : charMatcher.getStats();
+    }
+
+    /**
+     * switches between matching the chars by the brightness of the tiles and by their shape. the shape
+     * matcher is created by the first render that needs it
+     */
+    private void toggleShapes() {
+        shapes = !shapes;
+        System.out.printf(SHAPE_CHANGE_MSG, shapes ? ON : OFF);
+    }
+
+    /**
+     * switches the dithering of the brightness matcher on or off. the shape matcher compares the shapes of
+     * the tiles, which dithering has no brightness to spread between, so it can't be switched in shape mode
+     */
+    private void toggleDithering() {
+        if (shapes) {
+            System.out.println(DITHER_IN_SHAPE_MSG);
+            return;
+        }
+        dithering = !dithering;
+        charMatcher.setDithering(dithering);
+        System.out.printf(DITHER_CHANGE_MSG, dithering ? ON : OFF);
     }
 
     /**
-     * this function handles the "console","chars" and "render" commands
+     * prints the time spent in each stage of the renders so far and the work they did, as a table or, with
+     * the json parameter, as a single line of JSON
+     *
+     * @param commands the commands inputted by the user
+     */
+    private void showStats(String[] commands) {
+        RenderStats stats = currentStats();
+        if (commands.length == 1) {
+            System.out.print(stats.format());
+        } else if (commands[PARAM].equals(JSON_COMMAND)) {
+            System.out.println(stats.toJson());
+        } else {
+            System.out.println(WRONG_STATS_INPUT_MSG);
+        }
+    }
+
+    /**
+     * switches the output back to the HTML file. with the gzip option the file is gzipped (and named
+     * out.html.gz), and with the collapse option runs of a repeated char are written once, with their
+     * length, and expanded by a script when the page loads, so a page viewed without JavaScript shows each
+     * run as a single char
+     *
+     * @param commands the commands inputted by the user
+     */
+    private void htmlOutput(String[] commands) {
+        boolean gzip = false, collapseRuns = false;
+        if (commands.length > 1) {
+            for (String option : commands[PARAM].split(SPACE_REGEX)) {
+                if (option.equals(GZIP_OPTION)) {
+                    gzip = true;
+                } else if (option.equals(COLLAPSE_OPTION)) {
+                    collapseRuns = true;
+                } else {
+                    System.out.println(WRONG_HTML_INPUT_MSG);
+                    return;
+                }
+            }
+        }
+        output = new HtmlAsciiOutput(gzip ? GZIP_OUTPUT_FILENAME : OUTPUT_FILENAME, FONT_NAME, gzip,
+                collapseRuns);
+    }
+
+    /**
+     * sets the number of threads that match the tiles by their brightness. with one worker the image is
+     * converted serially
+     *
+     * @param commands the commands inputted by the user
+     */
+    private void workersChange(String[] commands) {
+        if (commands.length == 1 || !commands[PARAM].matches(WORKERS_PATTERN)) {
+            System.out.println(WRONG_WORKERS_INPUT_MSG);
+            return;
+        }
+        int numOfWorkers = Integer.parseInt(commands[PARAM]);
+        charMatcher.setNumOfWorkers(numOfWorkers);
+        System.out.printf(WORKERS_CHANGE_MSG, numOfWorkers);
+    }
+
+    /**
+     * this function handles the "console","color","shape","dither","chars" and "render" commands
      *
      * @param commands the commands inputted by the user
      */
@@ -232,6 +409,16 @@ public class Shell {
             case CONSOLE_COMMAND:
                 this.output = new ConsoleAsciiOutput();
                 break;
+            case COLOR_COMMAND:
+                colors = !colors;
+                System.out.printf(COLOR_CHANGE_MSG, colors ? ON : OFF);
+                break;
+            case SHAPE_COMMAND:
+                toggleShapes();
+                break;
+            case DITHER_COMMAND:
+                toggleDithering();
+                break;
             case CHARS_COMMAND:
                 showChars();
                 break;
@@ -244,7 +431,46 @@ public class Shell {
      * this function runs the shell. Receives input from the user and calls the corresponding functions.
      */
     public void run() {
-        System.out.print(CMD_PROMPT);
+        run(new Scanner(System.in), true);
+    }
+
+    /**
+     * runs the commands of a script, one per line, without prompting for them. the script ends at an exit
+     * command or at its end
+     *
+     * @param script the commands to run
+     */
+    public void runScript(Reader script) {
+        run(new Scanner(script), false);
+    }
+
+    /**
+     * runs commands until an exit command or the end of the input, and then stops the worker threads
+     *
+     * @param scanner the commands to run, one per line
+     * @param prompt  whether to prompt for every command
+     */
+    private void run(Scanner scanner, boolean prompt) {
+        try {
+            runCommands(scanner, prompt);
+        } finally {
+            charMatcher.close();
+        }
+    }
+
+    /**
+     * runs commands until an exit command or the end of the input
+     *
+     * @param scanner the commands to run, one per line
+     * @param prompt  whether to prompt for every command
+     */
+    private void runCommands(Scanner scanner, boolean prompt) {
+        if (prompt) {
+            System.out.print(CMD_PROMPT);
+        }
+        if (!scanner.hasNextLine()) {
+            return;
+        }
         String cmd = scanner.nextLine().trim();
         String[] commands = cmd.split(SPACE_REGEX, 2);
         while (!(commands[COMMAND].equals(EXIT_COMMAND) && commands.length == 1)) {
@@ -259,7 +485,19 @@ public class Shell {
                     case RES_COMMAND:
                         resChange(commands);
                         break;
+                    case STATS_COMMAND:
+                        showStats(commands);
+                        break;
+                    case WORKERS_COMMAND:
+                        workersChange(commands);
+                        break;
+                    case HTML_COMMAND:
+                        htmlOutput(commands);
+                        break;
                     case CONSOLE_COMMAND:
+                    case COLOR_COMMAND:
+                    case SHAPE_COMMAND:
+                    case DITHER_COMMAND:
                     case RENDER_COMMAND:
                     case CHARS_COMMAND:
                         command(commands);
@@ -268,7 +506,12 @@ public class Shell {
                         System.out.println(WRONG_INPUT_MSG);
                 }
             }
-            System.out.print(CMD_PROMPT);
+            if (prompt) {
+                System.out.print(CMD_PROMPT);
+            }
+            if (!scanner.hasNextLine()) {
+                return;
+            }
             cmd = scanner.nextLine().trim();
             commands = cmd.split(SPACE_REGEX, 2);
         }
@@ -0,0 +1,142 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+
+import java.awt.Rectangle;
+
+/**
+ * converts the frames of an animation to Ascii one after the other. consecutive frames are mostly alike, so
+ * a tile whose brightness changed by no more than a threshold since its char was chosen keeps that char,
+ * and no char is looked up for it. the brightness a char was chosen for is kept, rather than the previous
+ * frame's, so a tile that changes slowly still gets a new char once it drifted past the threshold. when the
+ * region of a frame that changed since the previous frame is known, only the brightness of the tiles it
+ * touches is calculated, and every other tile keeps its char without reading its pixels
+ */
+public class AnimationCharMatcher {
+
+    /**
+     * the default threshold, in brightness levels between 0 and 1
+     */
+    public static final double DEFAULT_CHANGE_THRESHOLD = 0.02;
+
+    private final CharSetBrightness charSet;
+    private double changeThreshold = DEFAULT_CHANGE_THRESHOLD;
+    private CharBrightnessIndex prevIndex = null;
+    private int prevNumCharsInRow = 0;
+    private int prevFrameWidth = 0;
+    private int prevFrameHeight = 0;
+    private double[] chosenBrightness = null;
+    private double[] tileBrightness = null;
+    private char[][] prevChars = null;
+    private int reusedTiles = 0;
+
+
+    /**
+     * creates a matcher with no previous frame
+     *
+     * @param charSet the Ascii chars to compile the frames with. changing the set between frames makes the
+     *                next frame be converted whole
+     */
+    public AnimationCharMatcher(CharSetBrightness charSet) {
+        this.charSet = charSet;
+    }
+
+    /**
+     * sets how much the brightness of a tile may change before its char is chosen again. with 0 only tiles
+     * whose brightness didn't change at all keep their char, so every frame is the same as converting it
+     * alone
+     *
+     * @param changeThreshold the threshold, in brightness levels between 0 and 1
+     */
+    public void setChangeThreshold(double changeThreshold) {
+        if (!(changeThreshold >= 0)) {
+            throw new IllegalArgumentException("threshold must not be negative: " + changeThreshold);
+        }
+        this.changeThreshold = changeThreshold;
+    }
+
+    /**
+     * converts the next frame of the animation, when the region it changed is not known
+     *
+     * @param frame         the frame
+     * @param numCharsInRow the number of char the user wants in a row
+     * @return a new array of chars that represents the frame. the next frame copies chars from it, so it
+     * must not be changed
+     */
+    public char[][] chooseChars(Image frame, int numCharsInRow) {
+        return chooseChars(frame, numCharsInRow, null);
+    }
+
+    /**
+     * converts the next frame of the animation
+     *
+     * @param frame         the frame
+     * @param numCharsInRow the number of char the user wants in a row
+     * @param changedRegion the pixels of the frame that may differ from the frame converted before it, or
+     *                      null if any of them may
+     * @return a new array of chars that represents the frame. the next frame copies chars from it, so it
+     * must not be changed
+     */
+    public char[][] chooseChars(Image frame, int numCharsInRow, Rectangle changedRegion) {
+        numCharsInRow = BrightnessImgCharMatcher.resolveNumCharsInRow(frame, numCharsInRow);
+        CharSetBrightness.Tables tables = charSet.getTables();
+        char[] chars = tables.chars;
+        CharBrightnessIndex index = tables.index;
+        TileGrid grid = new TileGrid(frame.getWidth(), frame.getHeight(), numCharsInRow);
+        int numOfRows = grid.getNumOfRows();
+        if (index != prevIndex || numCharsInRow != prevNumCharsInRow || frame.getWidth() != prevFrameWidth ||
+                frame.getHeight() != prevFrameHeight) {
+            //nothing of the previous frame can be kept
+            chosenBrightness = new double[numOfRows * numCharsInRow];
+            tileBrightness = new double[numOfRows * numCharsInRow];
+            prevChars = null;
+            prevIndex = index;
+            prevNumCharsInRow = numCharsInRow;
+            prevFrameWidth = frame.getWidth();
+            prevFrameHeight = frame.getHeight();
+        }
+        char[][] asciiArt = new char[numOfRows][numCharsInRow];
+        reusedTiles = 0;
+        if (chars.length == 0) {
+            return asciiArt;
+        }
+        //the block of tiles the changed region touches; the other tiles cover the same pixels as before
+        int fromRow = 0, toRow = numOfRows, fromCol = 0, toCol = numCharsInRow;
+        if (prevChars != null && changedRegion != null) {
+            Rectangle region = changedRegion.intersection(new Rectangle(frame.getWidth(), frame.getHeight()));
+            if (region.isEmpty()) {
+                toRow = toCol = 0;
+            } else {
+                fromRow = grid.getRowAt(region.y);
+                toRow = grid.getRowAt(region.y + region.height - 1) + 1;
+                fromCol = grid.getColumnAt(region.x);
+                toCol = grid.getColumnAt(region.x + region.width - 1) + 1;
+            }
+        }
+        BrightnessImgCharMatcher.calculateImageBrightness(frame, grid, fromRow, toRow, fromCol, toCol,
+                tileBrightness);
+        for (int row = 0; row < numOfRows; row++) {
+            for (int col = 0; col < numCharsInRow; col++) {
+                int tile = row * numCharsInRow + col;
+                boolean inRegion = row >= fromRow && row < toRow && col >= fromCol && col < toCol;
+                if (prevChars != null && (!inRegion ||
+                        Math.abs(tileBrightness[tile] - chosenBrightness[tile]) <= changeThreshold)) {
+                    asciiArt[row][col] = prevChars[row][col];
+                    reusedTiles++;
+                } else {
+                    asciiArt[row][col] = chars[index.closestIndex(tileBrightness[tile])];
+                    chosenBrightness[tile] = tileBrightness[tile];
+                }
+            }
+        }
+        prevChars = asciiArt;
+        return asciiArt;
+    }
+
+    /**
+     * @return the number of tiles of the last frame that kept the char of the previous frame
+     */
+    public int getReusedTiles() {
+        return reusedTiles;
+    }
+}
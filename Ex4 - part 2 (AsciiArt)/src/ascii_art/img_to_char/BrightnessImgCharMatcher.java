@@ -2,24 +2,29 @@ package ascii_art.img_to_char;
 
 import image.Image;
 
-import java.awt.*;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * a class that receives an img and converts it to Ascii representation
+ * a class that receives an img and converts it to Ascii representation. the conversions are done by a
+ * TileCharMatcher on a PreparedImage, which can be shared between threads; this class adds the settings,
+ * the tiles of the last resolution and the stats of one user of the image, so it is used by one thread
  */
 public class BrightnessImgCharMatcher {
 
 
-    private static final int CHAR_PIXELS = 16;
-    private static final double RED_RATIO = 0.2126;
-    private static final double GREEN_RATIO = 0.7152;
-    private static final double BLUE_RATIO = 0.0722;
-    private static final int PIXELS_IN_IMAGE = CHAR_PIXELS * CHAR_PIXELS - 1;
+    static final int CHAR_PIXELS = 16;
     private int prevNumCharsInRow = 0;
-    private final Image img;
     private final String font;
-    private final HashMap<Image, Double> cache = new HashMap<>();
+    private PreparedImage image;
+    private double[] prevTileBrightness = null;
+    private int prevColorsNumCharsInRow = 0;
+    private int[][] prevTileColors = null;
+    private ForkJoinPool workerPool = null;
+    private boolean dithering = false;
+    private TileCharMatcher matcher = new TileCharMatcher();
+    private CharBrightnessIndex prevCharsBrightness = null;
+    private final RenderStats stats = new RenderStats();
 
 
     /**
@@ -29,8 +34,65 @@ public class BrightnessImgCharMatcher {
      * @param font the font of the Ascii characters
      */
     public BrightnessImgCharMatcher(Image img, String font) {
-        this.img = img;
         this.font = font;
+        this.image = new PreparedImage(img);
+    }
+
+    /**
+     * sets the number of threads that convert the image. with one worker (the default) the image is
+     * converted serially, with more the tile rows are converted in parallel by a fork-join pool. both modes
+     * produce the same chars
+     *
+     * @param numOfWorkers the number of threads to use
+     */
+    public void setNumOfWorkers(int numOfWorkers) {
+        if (numOfWorkers < 1) {
+            throw new IllegalArgumentException("number of workers must be positive: " + numOfWorkers);
+        }
+        if (workerPool != null) {
+            workerPool.shutdown();
+        }
+        workerPool = numOfWorkers == 1 ? null : new ForkJoinPool(numOfWorkers);
+        matcher = new TileCharMatcher(dithering, workerPool);
+    }
+
+    /**
+     * stops the threads of the matcher, if it has any. the matcher converts the image serially afterwards
+     */
+    public void close() {
+        setNumOfWorkers(1);
+    }
+
+    /**
+     * sets whether the brightness the chars can't match is diffused to the neighboring tiles, so smooth
+     * gradients are drawn without bands. a dithered image is converted serially, since every tile depends on
+     * the ones before it, whatever the number of workers
+     *
+     * @param dithering true to dither the image, false (the default) to match every tile on its own
+     */
+    public void setDithering(boolean dithering) {
+        this.dithering = dithering;
+        matcher = new TileCharMatcher(dithering, workerPool);
+    }
+
+    /**
+     * calculates ahead of time the brightness of the image's tiles at every resolution between the given
+     * limits, both powers of 2. converting the image at one of these resolutions then only matches chars
+     *
+     * @param minCharsInRow the smallest number of chars in a row to prepare
+     * @param maxCharsInRow the largest number of chars in a row to prepare
+     * @throws IllegalArgumentException if the range is empty or wider than the image
+     */
+    public void precomputeResolutions(int minCharsInRow, int maxCharsInRow) {
+        image = image.withResolutions(minCharsInRow, maxCharsInRow);
+    }
+
+    /**
+     * @return the image with the tables this matcher built, which can be converted by other threads with a
+     * TileCharMatcher while this matcher is used
+     */
+    public PreparedImage getPreparedImage() {
+        return image;
     }
 
     /**
@@ -42,133 +104,150 @@ public class BrightnessImgCharMatcher {
      * @return an array of chars that represents the image
      */
     public char[][] chooseChars(int numCharsInRow, Character[] charSet) {
-        numCharsInRow = convertNumOfCharsToPowerOfTwo(numCharsInRow);
-        if (numCharsInRow != prevNumCharsInRow) {
-            cache.clear();
-            calculateImageBrightness(numCharsInRow);
-            prevNumCharsInRow = numCharsInRow;
+        stats.startRender();
+        long start = System.nanoTime();
+        char[] chars = new char[charSet.length];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = charSet[i];
         }
-        double[] charsBrightness = extendBrightness(getCharsBrightness(charSet));
-        return convertImageToAscii(charSet, charsBrightness, numCharsInRow);
+        CharBrightnessIndex charsBrightness =
+                new CharBrightnessIndex(extendBrightness(getCharsBrightness(charSet)));
+        stats.addTime(RenderStats.Stage.NORMALIZATION, System.nanoTime() - start);
+        stats.countCharSetCache(false);
+        return chooseChars(numCharsInRow, chars, charsBrightness);
     }
 
     /**
-     * check that the number of chars in a row that the user inputs is a power of 2. if not changes it to the
-     * closet number that is a power of 2 that is bigger than the number that the user inputted.
+     * does the same as chooseChars with an array of chars, but takes the brightness of the chars from a set
+     * that keeps it up to date, so nothing is recalculated for chars that were already in the set
      *
-     * @param numCharsInRow the number of chars in a row that the user wants
-     * @return corrected number that is a power of 2 or the original number
+     * @param numCharsInRow the number of char the user wants in a row
+     * @param charSet       the Ascii chars to compile the image with
+     * @return an array of chars that represents the image
      */
-    private int convertNumOfCharsToPowerOfTwo(int numCharsInRow) {
-        double numCharsLogTwo = Math.log(numCharsInRow) / Math.log(2);
-        if (((int) (Math.ceil(numCharsLogTwo)) != (int) (Math.floor(numCharsLogTwo)))) {
-            int correctNumCharsInRow = 1;
-            while (correctNumCharsInRow <= numCharsInRow) {
-                correctNumCharsInRow = correctNumCharsInRow * 2;
-            }
-            numCharsInRow = correctNumCharsInRow;
-        }
-        return numCharsInRow;
+    public char[][] chooseChars(int numCharsInRow, CharSetBrightness charSet) {
+        stats.startRender();
+        long start = System.nanoTime();
+        CharSetBrightness.Tables tables = charSet.getTables();
+        stats.addTime(RenderStats.Stage.NORMALIZATION, System.nanoTime() - start);
+        stats.countCharSetCache(tables.index == prevCharsBrightness);
+        prevCharsBrightness = tables.index;
+        return chooseChars(numCharsInRow, tables.chars, tables.index);
     }
 
     /**
-     * splits the img to sub images and replaces each image with a matching Ascii char by matching the
-     * brightness level
+     * returns the time spent in each stage of the conversions of this matcher, and the work they did. the
+     * output stage is added by whoever writes the chars
      *
-     * @param charSet         the chars to replace the image with
-     * @param charsBrightness an array that holds the chars' brightness level
-     * @param numCharsInRow   hoe many chars to put n a row. determines how many sub images are going to be
-     * @return a list representing the image in Ascii
-     */
-    private char[][] convertImageToAscii(Character[] charSet, double[] charsBrightness, int numCharsInRow) {
-        int pixels = img.getWidth() / numCharsInRow;
-        char[][] asciiArt = new char[img.getHeight() / pixels][img.getWidth() / pixels];
-        if (charSet.length == 0){
-            return asciiArt;
-        }
-        int colIndex = 0, rowIndex = 0;
-        for (Image subImage : img.squareSubImagesOfSize(pixels)) {
-            int closestChar = getClosestChar(charsBrightness, subImage);
-            asciiArt[rowIndex][colIndex] = charSet[closestChar];
-            colIndex++;
-            if (colIndex == numCharsInRow) {
-                colIndex = 0;
-                rowIndex++;
-            }
+     * @return the stats of this matcher, which keep changing as it converts the image
+     */
+    public RenderStats getStats() {
+        return stats;
+    }
+
+    /**
+     * finds the average color of every tile of the image, at the same resolution chooseChars converts the
+     * image to, so the colors can be shown with the chars. the colors of the last resolution are kept
+     *
+     * @param numCharsInRow the number of char the user wants in a row
+     * @return the packed RGB average color of each tile, by the indices of the chars. the array is shared
+     * and must not be changed
+     */
+    public int[][] chooseColors(int numCharsInRow) {
+        long start = System.nanoTime();
+        numCharsInRow = image.resolveNumCharsInRow(numCharsInRow);
+        if (numCharsInRow != prevColorsNumCharsInRow) {
+            prevTileColors = image.calculateTileColors(numCharsInRow);
+            prevColorsNumCharsInRow = numCharsInRow;
         }
-        return asciiArt;
+        stats.addTime(RenderStats.Stage.TILING, System.nanoTime() - start);
+        return prevTileColors;
     }
 
     /**
-     * the function finds the closest char in its brightness level to the sub image brightness level
+     * transforms the image to Ascii characters, given the chars and their brightness lookup table
      *
-     * @param charsBrightness an array that contains the Ascii chars brightness level
-     * @param subImage        the image to replace with an Ascii char
-     * @return the matching char index in the char array
-     */
-    private int getClosestChar(double[] charsBrightness, Image subImage) {
-        double closestBrightness = 1;
-        int closestChar = 0;
-        for (int i = 0; i < charsBrightness.length; i++) {
-            if (Math.abs(charsBrightness[i] - cache.get(subImage)) < closestBrightness) {
-                closestBrightness = Math.abs(charsBrightness[i] - cache.get(subImage));
-                closestChar = i;
+     * @param numCharsInRow   the number of char the user wants in a row
+     * @param charSet         the Ascii chars to compile the image with
+     * @param charsBrightness a lookup table of the chars' normalized brightness level
+     * @return an array of chars that represents the image
+     */
+    private char[][] chooseChars(int numCharsInRow, char[] charSet, CharBrightnessIndex charsBrightness) {
+        long start = System.nanoTime();
+        numCharsInRow = image.resolveNumCharsInRow(numCharsInRow);
+        double[] tileBrightness = image.getPreparedBrightness(numCharsInRow);
+        boolean tileCacheHit = tileBrightness != null || numCharsInRow == prevNumCharsInRow;
+        if (tileBrightness == null) {
+            if (numCharsInRow != prevNumCharsInRow) {
+                prevTileBrightness = image.getTileBrightness(numCharsInRow);
+                prevNumCharsInRow = numCharsInRow;
             }
+            tileBrightness = prevTileBrightness;
         }
-        return closestChar;
+        stats.countTileCache(tileCacheHit);
+        long tiled = System.nanoTime();
+        stats.addTime(RenderStats.Stage.TILING, tiled - start);
+        char[][] asciiArt =
+                matcher.convertTileBrightnessToAscii(charSet, charsBrightness, tileBrightness, numCharsInRow);
+        stats.addTime(RenderStats.Stage.MATCHING, System.nanoTime() - tiled);
+        stats.addTiles(tileBrightness.length);
+        return asciiArt;
     }
 
-
     /**
-     * receives an array of chars and calculates the brightness level of each one
+     * the number of chars in a row the image is actually converted to. images whose dimensions are both
+     * powers of 2 (like the padded images of Image.fromFile) keep to powers of 2, as they always did, and
+     * other images are converted to exactly the number asked for
      *
-     * @param charArray the chars to calculate
-     * @return an Array of the brightness levels
+     * @param img           the image
+     * @param numCharsInRow the number of chars in a row that the user wants
+     * @return the number of chars in a row to convert to
      */
-    private double[] getCharsBrightness(Character[] charArray) {
-        double[] charBrightness = new double[charArray.length];
-        boolean[][][] charImgArray = new boolean[charArray.length][][];
-        renderChars(charArray, charImgArray);
-        calculateCharBrightness(charBrightness, charImgArray);
-        return charBrightness;
+    static int resolveNumCharsInRow(Image img, int numCharsInRow) {
+        return hasPowerOfTwoDimensions(img) ? convertNumOfCharsToPowerOfTwo(numCharsInRow) : numCharsInRow;
     }
 
+    /**
+     * @param img the image
+     * @return true if the width and the height of the image are both powers of 2
+     */
+    static boolean hasPowerOfTwoDimensions(Image img) {
+        return Integer.bitCount(img.getWidth()) == 1 && Integer.bitCount(img.getHeight()) == 1;
+    }
 
     /**
-     * renders the chars by using the CharRenderer class
+     * check that the number of chars in a row that the user inputs is a power of 2. if not changes it to the
+     * closet number that is a power of 2 that is bigger than the number that the user inputted.
      *
-     * @param charArray    the chars to render
-     * @param charImgArray the rendered representations of the chars
-     */
-    private void renderChars(Character[] charArray, boolean[][][] charImgArray) {
-        int i = 0;
-        for (char singleChar : charArray) {
-            charImgArray[i] = CharRenderer.getImg(singleChar, CHAR_PIXELS, font);
-            i++;
+     * @param numCharsInRow the number of chars in a row that the user wants
+     * @return corrected number that is a power of 2 or the original number
+     */
+    static int convertNumOfCharsToPowerOfTwo(int numCharsInRow) {
+        double numCharsLogTwo = Math.log(numCharsInRow) / Math.log(2);
+        if (((int) (Math.ceil(numCharsLogTwo)) != (int) (Math.floor(numCharsLogTwo)))) {
+            int correctNumCharsInRow = 1;
+            while (correctNumCharsInRow <= numCharsInRow) {
+                correctNumCharsInRow = correctNumCharsInRow * 2;
+            }
+            numCharsInRow = correctNumCharsInRow;
         }
+        return numCharsInRow;
     }
 
     /**
-     * calculates each char brightness level
+     * receives an array of chars and finds the brightness level of each one. a char is rendered only the
+     * first time its brightness is needed
      *
-     * @param charBrightness array that holds the chars' brightness levels
-     * @param charImgArray   array that holds the chars
-     */
-    private void calculateCharBrightness(double[] charBrightness, boolean[][][] charImgArray) {
-        int i = 0;
-        double brightPixels = 0;
-        for (boolean[][] charImg : charImgArray) {
-            for (boolean[] row : charImg) {
-                for (boolean value : row) {
-                    if (value) {
-                        brightPixels++;
-                    }
-                }
-            }
-            charBrightness[i] = brightPixels / (PIXELS_IN_IMAGE);
-            brightPixels = 0;
-            i++;
+     * @param charArray the chars to calculate
+     * @return an Array of the brightness levels
+     */
+    private double[] getCharsBrightness(Character[] charArray) {
+        double[] charBrightness = new double[charArray.length];
+        for (int i = 0; i < charArray.length; i++) {
+            charBrightness[i] = GlyphBrightnessCache.getBrightness(charArray[i], CHAR_PIXELS, font);
         }
+        GlyphBrightnessCache.save(CHAR_PIXELS, font);
+        return charBrightness;
     }
 
     /**
@@ -196,29 +275,62 @@ public class BrightnessImgCharMatcher {
     }
 
     /**
-     * the function transforms each sub image to grey and checks the total brightness of the img
+     * calculates the brightness of a block of tiles from the rows of an image, summing the brightness of the
+     * pixels of every tile a row of tiles at a time. unlike a summed-area table it needs no memory besides a
+     * row of pixels, and it reads only the pixels of the block
      *
-     * @param img the img to check the brightness of
-     */
-    private void getAverageBrightness(Image img) {
-        double sum = 0, numOfPixels = 0;
-        for (Color pixel : img.pixels()) {
-            sum += (pixel.getRed() * RED_RATIO + pixel.getGreen() * GREEN_RATIO + pixel.getBlue() *
-                    BLUE_RATIO) / PIXELS_IN_IMAGE;
-            numOfPixels++;
+     * @param img            the image
+     * @param grid           the tiles of the image
+     * @param fromRow        the first row of tiles of the block
+     * @param toRow          the row of tiles after the block
+     * @param fromCol        the first column of tiles of the block
+     * @param toCol          the column of tiles after the block
+     * @param tileBrightness the brightness of the tiles, row after row, where the block is written
+     */
+    static void calculateImageBrightness(Image img, TileGrid grid, int fromRow, int toRow, int fromCol,
+                                         int toCol, double[] tileBrightness) {
+        int numCharsInRow = grid.getNumOfColumns();
+        int left = grid.getLeft(fromCol), width = grid.getLeft(toCol) - left;
+        double[] sums = new double[Math.max(0, toCol - fromCol)];
+        int[] row = new int[Math.max(0, width)];
+        for (int rowIndex = fromRow; rowIndex < toRow; rowIndex++) {
+            Arrays.fill(sums, 0);
+            for (int y = grid.getTop(rowIndex); y < grid.getTop(rowIndex + 1); y++) {
+                img.getRowRgb(left, y, width, row, 0);
+                for (int colIndex = fromCol; colIndex < toCol; colIndex++) {
+                    for (int x = grid.getLeft(colIndex); x < grid.getLeft(colIndex + 1); x++) {
+                        sums[colIndex - fromCol] += BrightnessIntegralImage.greyLevel(row[x - left]);
+                    }
+                }
+            }
+            double tileHeight = grid.getTop(rowIndex + 1) - grid.getTop(rowIndex);
+            for (int colIndex = fromCol; colIndex < toCol; colIndex++) {
+                double pixelsInTile = tileHeight * (grid.getLeft(colIndex + 1) - grid.getLeft(colIndex));
+                tileBrightness[rowIndex * numCharsInRow + colIndex] = sums[colIndex - fromCol] / pixelsInTile;
+            }
         }
-        cache.put(img, sum / numOfPixels);
     }
 
     /**
-     * calculates the sub images brightness and adds them to the cache each time the resolution changes
+     * calculates the brightness of the tiles of an image. the tiles at the right and bottom edges of an
+     * image whose size doesn't divide evenly are averaged over the pixels they actually cover
      *
+     * @param integralImage the brightness table of the image
      * @param numCharsInRow number of chars in each row. represents the resolution
+     * @return the brightness of the tiles, row after row
      */
-    private void calculateImageBrightness(int numCharsInRow) {
-        int pixels = img.getWidth() / numCharsInRow;
-        for (Image subImage : img.squareSubImagesOfSize(pixels)) {
-            getAverageBrightness(subImage);
+    static double[] calculateImageBrightness(BrightnessIntegralImage integralImage, int numCharsInRow) {
+        TileGrid grid = new TileGrid(integralImage.getWidth(), integralImage.getHeight(), numCharsInRow);
+        double[] tileBrightness = new double[grid.getNumOfRows() * numCharsInRow];
+        for (int rowIndex = 0; rowIndex < grid.getNumOfRows(); rowIndex++) {
+            int top = grid.getTop(rowIndex), tileHeight = grid.getTop(rowIndex + 1) - top;
+            for (int colIndex = 0; colIndex < numCharsInRow; colIndex++) {
+                int left = grid.getLeft(colIndex);
+                int tileWidth = grid.getLeft(colIndex + 1) - left;
+                tileBrightness[rowIndex * numCharsInRow + colIndex] =
+                        integralImage.averageBrightness(left, top, tileWidth, tileHeight);
+            }
         }
+        return tileBrightness;
     }
 }
@@ -0,0 +1,84 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+
+/**
+ * a summed-area table of the grey level of an image. it is built once in a single pass over the pixels,
+ * after which the average brightness of any rectangle of the image is found in constant time
+ */
+class BrightnessIntegralImage {
+
+    private static final double RED_RATIO = 0.2126;
+    private static final double GREEN_RATIO = 0.7152;
+    private static final double BLUE_RATIO = 0.0722;
+    private static final int MAX_COLOR_VALUE = 255;
+
+    private final int width;
+    private final int height;
+    private final double[] sums;
+
+
+    /**
+     * builds the table. sums[(y * (width + 1)) + x] holds the total brightness of the rectangle [0,x)x[0,y)
+     *
+     * @param img the image to build the table of
+     */
+    BrightnessIntegralImage(Image img) {
+        width = img.getWidth();
+        height = img.getHeight();
+        int rowLength = width + 1;
+        sums = new double[rowLength * (height + 1)];
+        //rows are copied in bulk into one buffer instead of reading the image pixel by pixel
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            img.getRowRgb(0, y, width, row, 0);
+            double rowSum = 0;
+            for (int x = 0; x < width; x++) {
+                rowSum += greyLevel(row[x]);
+                sums[(y + 1) * rowLength + x + 1] = sums[y * rowLength + x + 1] + rowSum;
+            }
+        }
+    }
+
+    /**
+     * the grey level of a packed rgb pixel, between 0 and 1
+     *
+     * @param rgb the pixel
+     * @return the brightness of the pixel
+     */
+    static double greyLevel(int rgb) {
+        return (((rgb >> 16) & 0xff) * RED_RATIO + ((rgb >> 8) & 0xff) * GREEN_RATIO + (rgb & 0xff) *
+                BLUE_RATIO) / MAX_COLOR_VALUE;
+    }
+
+    /**
+     * calculates the average brightness of a rectangle of the image
+     *
+     * @param x          the left column of the rectangle
+     * @param y          the top row of the rectangle
+     * @param tileWidth  the width of the rectangle in pixels
+     * @param tileHeight the height of the rectangle in pixels
+     * @return the average brightness, between 0 and 1
+     */
+    double averageBrightness(int x, int y, int tileWidth, int tileHeight) {
+        int rowLength = width + 1;
+        int top = y * rowLength, bottom = (y + tileHeight) * rowLength;
+        double sum = sums[bottom + x + tileWidth] - sums[bottom + x] - sums[top + x + tileWidth] +
+                sums[top + x];
+        return sum / ((double) tileWidth * tileHeight);
+    }
+
+    /**
+     * @return the width of the table's image
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the table's image
+     */
+    int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,93 @@
+package ascii_art.img_to_char;
+
+/**
+ * the average brightness of the tiles of an image at every resolution between a minimum and a maximum
+ * number of tiles in a row. the dimensions of the image are powers of 2, so every level is an exact 2x2
+ * reduction of the level below it: only the finest level is read from the image, and each coarser level is
+ * built from the one below it in a quarter of the time
+ */
+class BrightnessPyramid {
+
+    private final int maxCharsInRow;
+    private final double[][] levels;
+
+
+    /**
+     * builds every level, from maxCharsInRow tiles in a row down to minCharsInRow (or until a level has a
+     * single row or column). no level is built if the tiles of the finest level are higher than the image,
+     * whose tiles are then cut to the image's height by TileGrid instead
+     *
+     * @param integralImage the brightness table of the image
+     * @param minCharsInRow the number of tiles in a row of the coarsest level, a power of 2
+     * @param maxCharsInRow the number of tiles in a row of the finest level, a power of 2
+     * @throws IllegalArgumentException if the range is empty or wider than the image
+     */
+    BrightnessPyramid(BrightnessIntegralImage integralImage, int minCharsInRow, int maxCharsInRow) {
+        int width = integralImage.getWidth();
+        if (minCharsInRow < 1 || maxCharsInRow < minCharsInRow || maxCharsInRow > width) {
+            throw new IllegalArgumentException(String.format("cannot build levels from %d to %d chars in " +
+                    "a row of an image %d pixels wide", minCharsInRow, maxCharsInRow, width));
+        }
+        this.maxCharsInRow = maxCharsInRow;
+        int pixels = integralImage.getWidth() / maxCharsInRow;
+        int cols = maxCharsInRow, rows = integralImage.getHeight() / pixels;
+        int numOfLevels = rows > 0 ? 1 : 0;
+        for (int levelCols = cols, levelRows = rows; levelCols / 2 >= minCharsInRow && levelCols > 1 &&
+                levelRows > 1; levelCols /= 2, levelRows /= 2) {
+            numOfLevels++;
+        }
+        levels = new double[numOfLevels][];
+        if (numOfLevels == 0) {
+            return;
+        }
+        levels[0] = new double[rows * cols];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                levels[0][row * cols + col] =
+                        integralImage.averageBrightness(col * pixels, row * pixels, pixels, pixels);
+            }
+        }
+        for (int level = 1; level < numOfLevels; level++) {
+            levels[level] = reduce(levels[level - 1], cols, rows);
+            cols /= 2;
+            rows /= 2;
+        }
+    }
+
+    /**
+     * averages every 2x2 block of tiles of a level to one tile of the next level
+     *
+     * @param level the level to reduce
+     * @param cols  the number of tiles in a row of the level
+     * @param rows  the number of tiles in a column of the level
+     * @return the next level
+     */
+    private static double[] reduce(double[] level, int cols, int rows) {
+        int halfCols = cols / 2, halfRows = rows / 2;
+        double[] reduced = new double[halfCols * halfRows];
+        for (int row = 0; row < halfRows; row++) {
+            int top = 2 * row * cols, bottom = top + cols;
+            for (int col = 0; col < halfCols; col++) {
+                reduced[row * halfCols + col] = (level[top + 2 * col] + level[top + 2 * col + 1] +
+                        level[bottom + 2 * col] + level[bottom + 2 * col + 1]) / 4;
+            }
+        }
+        return reduced;
+    }
+
+    /**
+     * returns the brightness of the tiles at a resolution, row after row
+     *
+     * @param numCharsInRow the number of tiles in a row
+     * @return the level of the resolution, or null if it was not built. the array is shared and must not be
+     * changed
+     */
+    double[] getLevel(int numCharsInRow) {
+        for (int level = 0, cols = maxCharsInRow; level < levels.length; level++, cols /= 2) {
+            if (cols == numCharsInRow) {
+                return levels[level];
+            }
+        }
+        return null;
+    }
+}
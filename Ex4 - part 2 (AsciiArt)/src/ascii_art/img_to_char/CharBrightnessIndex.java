@@ -0,0 +1,100 @@
+package ascii_art.img_to_char;
+
+import java.util.Arrays;
+
+/**
+ * a lookup table from a brightness level to the char whose normalized brightness is the closest to it.
+ * the brightness levels are kept sorted, with a parallel array of the chars' indices, and a table of 256
+ * buckets points into the sorted array so a lookup only looks at the few levels inside one bucket.
+ * a lookup returns the same index as a linear scan that keeps the first closest char
+ */
+class CharBrightnessIndex {
+
+    private static final int BUCKETS = 256;
+
+    private final double[] charsBrightness;
+    private final double[] sortedBrightness;
+    private final int[] charIndices;
+    private final int[] bucketStart = new int[BUCKETS];
+
+
+    /**
+     * builds the index. levels that appear more than once are kept once, with the smallest char index, and
+     * levels that are not a number (a char set whose chars are all equally bright) never match
+     *
+     * @param charsBrightness the normalized brightness of each char, by the chars' order
+     */
+    CharBrightnessIndex(double[] charsBrightness) {
+        this.charsBrightness = charsBrightness;
+        Integer[] order = new Integer[charsBrightness.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (first, second) -> {
+            int compare = Double.compare(charsBrightness[first], charsBrightness[second]);
+            return compare != 0 ? compare : Integer.compare(first, second);
+        });
+        double[] levels = new double[order.length];
+        int[] indices = new int[order.length];
+        int size = 0;
+        for (int charIndex : order) {
+            double brightness = charsBrightness[charIndex];
+            if (Double.isNaN(brightness) || (size > 0 && levels[size - 1] == brightness)) {
+                continue;
+            }
+            levels[size] = brightness;
+            indices[size] = charIndex;
+            size++;
+        }
+        sortedBrightness = Arrays.copyOf(levels, size);
+        charIndices = Arrays.copyOf(indices, size);
+        int position = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            while (position < size && sortedBrightness[position] < (double) bucket / BUCKETS) {
+                position++;
+            }
+            bucketStart[bucket] = position;
+        }
+    }
+
+    /**
+     * finds the char whose brightness is the closest to the given brightness
+     *
+     * @param brightness the brightness of a sub image, between 0 and 1
+     * @return the index of the matching char in the chars' order, or 0 if no char is closer than 1
+     */
+    int closestIndex(double brightness) {
+        if (sortedBrightness.length == 0 || Double.isNaN(brightness)) {
+            return 0;
+        }
+        int bucket = Math.min(Math.max((int) (brightness * BUCKETS), 0), BUCKETS - 1);
+        int position = bucketStart[bucket];
+        while (position < sortedBrightness.length && sortedBrightness[position] < brightness) {
+            position++;
+        }
+        double closestBrightness = 1;
+        int closestChar = 0;
+        if (position < sortedBrightness.length) {
+            closestBrightness = Math.abs(sortedBrightness[position] - brightness);
+            closestChar = charIndices[position];
+        }
+        if (position > 0) {
+            double lowerDistance = Math.abs(sortedBrightness[position - 1] - brightness);
+            if (lowerDistance < closestBrightness ||
+                    (lowerDistance == closestBrightness && charIndices[position - 1] < closestChar)) {
+                closestBrightness = lowerDistance;
+                closestChar = charIndices[position - 1];
+            }
+        }
+        return closestBrightness < 1 ? closestChar : 0;
+    }
+
+    /**
+     * @param charIndex the index of a char in the chars' order
+     * @return the normalized brightness of the char, which is not a number if all the chars are equally
+     * bright
+     */
+    double getBrightness(int charIndex) {
+        return charsBrightness[charIndex];
+    }
+}
@@ -2,6 +2,8 @@ package ascii_art.img_to_char;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Inspired by, and partly copied from
@@ -19,14 +21,19 @@ public class CharRenderer {
     private static final char DARK_PIXEL = '#';
     private static final char BRIGHT_PIXEL = ' ';
 
+    private static final Map<String, Map<Integer, boolean[][]>> glyphCache = new ConcurrentHashMap<>();
+
     /**
      * Renders a given character, according to how it looks in the font specified in the
      * constructor, to a square black&white image (2D array of booleans),
      * whose dimension in pixels is specified.
+     * Each (font, size, char) is drawn only once; later calls return the same array,
+     * which must therefore not be changed by the caller.
      */
     public static boolean[][] getImg(char c, int pixels, String fontName) {
-        int key = (pixels << 8) | c;
-        return render(c, pixels, fontName);
+        int key = (pixels << 16) | c;
+        return glyphCache.computeIfAbsent(fontName, name -> new ConcurrentHashMap<>())
+                .computeIfAbsent(key, k -> render(c, pixels, fontName));
     }
 
     private static boolean[][] render(char c, int pixels, String fontName) {
@@ -0,0 +1,147 @@
+package ascii_art.img_to_char;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * a set of chars that keeps the brightness of its chars up to date as chars are added and removed. the
+ * brightness of a char is found once, when it is added, and the minimum and maximum brightness used to
+ * normalize the set are tracked with every change, so converting an image never goes over the glyphs of
+ * the whole set again. the lookup table of the normalized levels is rebuilt only after the set changed.
+ * the set can be shared between threads: a conversion takes the chars and their tables together, as they
+ * were when it started, so it is not affected by changes made to the set while it runs
+ */
+public class CharSetBrightness {
+
+    private final String font;
+    private final TreeMap<Character, Double> charsBrightness = new TreeMap<>();
+    private final TreeMap<Double, Integer> brightnessCounts = new TreeMap<>();
+    private Tables tables = null;
+
+
+    /**
+     * creates an empty set
+     *
+     * @param font the font the chars are rendered in
+     */
+    public CharSetBrightness(String font) {
+        this.font = font;
+    }
+
+    /**
+     * adds a char to the set, if it is not in it yet
+     *
+     * @param c the char to add
+     */
+    public synchronized void add(char c) {
+        if (charsBrightness.containsKey(c)) {
+            return;
+        }
+        double brightness = GlyphBrightnessCache.getBrightness(c, BrightnessImgCharMatcher.CHAR_PIXELS, font);
+        charsBrightness.put(c, brightness);
+        brightnessCounts.merge(brightness, 1, Integer::sum);
+        tables = null;
+    }
+
+    /**
+     * removes a char from the set, if it is in it
+     *
+     * @param c the char to remove
+     */
+    public synchronized void remove(char c) {
+        Double brightness = charsBrightness.remove(c);
+        if (brightness == null) {
+            return;
+        }
+        if (brightnessCounts.merge(brightness, -1, Integer::sum) == 0) {
+            brightnessCounts.remove(brightness);
+        }
+        tables = null;
+    }
+
+    /**
+     * writes the brightness of the glyphs rendered for the set to the glyph store, if it is on, so later runs
+     * don't render them again. meant to be called after a batch of adds rather than after each one
+     */
+    public void save() {
+        GlyphBrightnessCache.save(BrightnessImgCharMatcher.CHAR_PIXELS, font);
+    }
+
+    /**
+     * @return the number of chars in the set
+     */
+    public synchronized int size() {
+        return charsBrightness.size();
+    }
+
+    /**
+     * @return the chars of the set, sorted
+     */
+    public char[] toCharArray() {
+        return getTables().chars.clone();
+    }
+
+    /**
+     * returns the sorted chars and their lookup table, rebuilt if the set changed since they were last
+     * built. the levels are normalized the same way BrightnessImgCharMatcher normalizes them, using the
+     * tracked minimum and maximum
+     *
+     * @return the tables of the set as it is now, which later changes to the set don't change
+     */
+    synchronized Tables getTables() {
+        if (tables != null) {
+            return tables;
+        }
+        char[] chars = new char[charsBrightness.size()];
+        double[] extendedBrightness = new double[chars.length];
+        if (chars.length > 0) {
+            double minBrightness = brightnessCounts.firstKey(), maxBrightness = brightnessCounts.lastKey();
+            int i = 0;
+            for (Map.Entry<Character, Double> entry : charsBrightness.entrySet()) {
+                chars[i] = entry.getKey();
+                extendedBrightness[i] = (entry.getValue() - minBrightness) / (maxBrightness - minBrightness);
+                i++;
+            }
+        }
+        tables = new Tables(chars, extendedBrightness, font);
+        return tables;
+    }
+
+    /**
+     * the sorted chars of the set and the lookup tables of their normalized brightness and of their shapes,
+     * as they were when they were built. the arrays are shared and must not be changed
+     */
+    static class Tables {
+        final char[] chars;
+        final double[] normalizedBrightness;
+        final CharBrightnessIndex index;
+        private final String font;
+        private GlyphShapeIndex shapeIndex = null;
+
+        private Tables(char[] chars, double[] normalizedBrightness, String font) {
+            this.chars = chars;
+            this.normalizedBrightness = normalizedBrightness;
+            this.index = new CharBrightnessIndex(normalizedBrightness);
+            this.font = font;
+        }
+
+        /**
+         * @return the lookup table of the shapes of the chars, built the first time it is needed, since
+         * rendering the glyphs' shapes costs more than their brightness
+         */
+        synchronized GlyphShapeIndex getShapeIndex() {
+            if (shapeIndex == null) {
+                int pixels = BrightnessImgCharMatcher.CHAR_PIXELS;
+                shapeIndex = new GlyphShapeIndex(chars, normalizedBrightness, pixels, font);
+            }
+            return shapeIndex;
+        }
+
+        /**
+         * @return true if the lookup table of the shapes was already built
+         */
+        synchronized boolean hasShapeIndex() {
+            return shapeIndex != null;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package ascii_art.img_to_char;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * keeps the brightness of every glyph that was rendered, per font and size, so a char is rasterized only
+ * once. optionally the values are also kept on disk, one properties file per font and size, so later runs
+ * don't rasterize them at all. the store directory is taken from the "ascii_art.glyphStore" system
+ * property
+ */
+public class GlyphBrightnessCache {
+
+    private static final String STORE_DIRECTORY_PROPERTY = "ascii_art.glyphStore";
+    private static final String STORE_FILE_FORMAT = "%s_%d.properties";
+    private static final String ESCAPED_CHAR_FORMAT = "_%04x";
+    private static final String STORE_COMMENT = "glyph brightness by char code";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Map<String, Map<Character, Double>> brightnessCache = new ConcurrentHashMap<>();
+    private static final Map<String, Boolean> unsavedFonts = new ConcurrentHashMap<>();
+    private static final Map<String, Map<Integer, String>> storeKeys = new ConcurrentHashMap<>();
+    private static final File storeDirectory = initialStoreDirectory();
+    private static final LongAdder lookups = new LongAdder();
+    private static final LongAdder renders = new LongAdder();
+    private static final LongAdder renderNanos = new LongAdder();
+
+    private GlyphBrightnessCache() {
+    }
+
+    /**
+     * returns the brightness of a char: the share of its bright pixels when rendered in the given font
+     *
+     * @param c        the char
+     * @param pixels   the size of the char's square image
+     * @param fontName the font the char is rendered in
+     * @return the brightness of the char
+     */
+    public static double getBrightness(char c, int pixels, String fontName) {
+        String key = storeKey(pixels, fontName);
+        lookups.increment();
+        Map<Character, Double> fontBrightness = brightnessCache.computeIfAbsent(key, k -> load(k));
+        Double brightness = fontBrightness.get(c);
+        if (brightness == null) {
+            brightness = fontBrightness.computeIfAbsent(c, ch -> {
+                long start = System.nanoTime();
+                double rendered = calculateBrightness(CharRenderer.getImg(ch, pixels, fontName));
+                renderNanos.add(System.nanoTime() - start);
+                renders.increment();
+                return rendered;
+            });
+            //marked only once the value is in the map, so a save that clears the mark also writes it
+            unsavedFonts.put(key, true);
+        }
+        return brightness;
+    }
+
+    /**
+     * @return the number of times the brightness of a char was asked for, in all fonts
+     */
+    static long getLookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * @return the number of chars that were rasterized, because they were neither in memory nor in the store
+     */
+    static long getRenders() {
+        return renders.sum();
+    }
+
+    /**
+     * @return the time spent rasterizing chars, in nanoseconds
+     */
+    static long getRenderNanos() {
+        return renderNanos.sum();
+    }
+
+    /**
+     * writes the brightness values of the given font and size to the store, if any were added since they
+     * were last written. the values are read and written under one lock, so a later save never writes
+     * before an earlier one, and the file is written under a temporary name and then moved into place, so
+     * a reader never loads a half-written store
+     *
+     * @param pixels   the size of the chars' square images
+     * @param fontName the font the chars are rendered in
+     */
+    public static void save(int pixels, String fontName) {
+        String key = storeKey(pixels, fontName);
+        if (storeDirectory == null) {
+            return;
+        }
+        synchronized (GlyphBrightnessCache.class) {
+            if (unsavedFonts.remove(key) == null) {
+                return;
+            }
+            Properties properties = new Properties();
+            brightnessCache.get(key).forEach((c, brightness) ->
+                    properties.setProperty(Integer.toString(c), Double.toString(brightness)));
+            try {
+                write(new File(storeDirectory, key).getAbsoluteFile().toPath(), properties);
+            } catch (IOException e) {
+                unsavedFonts.put(key, true);
+                Logger.getGlobal().warning(String.format("Failed to write glyph store \"%s\"", key));
+            }
+        }
+    }
+
+    /**
+     * writes the properties to a temporary file next to the store file, and moves it into place
+     *
+     * @param storeFile  the store file
+     * @param properties the brightness values
+     * @throws IOException if the file can't be written
+     */
+    private static void write(Path storeFile, Properties properties) throws IOException {
+        Files.createDirectories(storeFile.getParent());
+        Path temp =
+                Files.createTempFile(storeFile.getParent(), storeFile.getFileName().toString(), TEMP_SUFFIX);
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp)) {
+                properties.store(writer, STORE_COMMENT);
+            }
+            Files.move(temp, storeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * the brightness of a rendered char, as counted by the number of its bright pixels
+     *
+     * @param charImg the rendered char
+     * @return the brightness of the char
+     */
+    private static double calculateBrightness(boolean[][] charImg) {
+        double brightPixels = 0;
+        for (boolean[] row : charImg) {
+            for (boolean value : row) {
+                if (value) {
+                    brightPixels++;
+                }
+            }
+        }
+        return brightPixels / (charImg.length * charImg.length - 1);
+    }
+
+    /**
+     * reads the stored brightness values of a font and size
+     *
+     * @param key the store key of the font and size
+     * @return a map of the stored values, empty if there are none
+     */
+    private static Map<Character, Double> load(String key) {
+        Map<Character, Double> brightness = new ConcurrentHashMap<>();
+        File storeFile = storeDirectory == null ? null : new File(storeDirectory, key);
+        if (storeFile == null || !storeFile.isFile()) {
+            return brightness;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = new FileReader(storeFile)) {
+            properties.load(reader);
+            for (String charCode : properties.stringPropertyNames()) {
+                brightness.put((char) Integer.parseInt(charCode),
+                        Double.parseDouble(properties.getProperty(charCode)));
+            }
+        } catch (IOException | NumberFormatException e) {
+            Logger.getGlobal().warning(String.format("Ignoring unreadable glyph store \"%s\"", key));
+            brightness.clear();
+        }
+        return brightness;
+    }
+
+    /**
+     * the name of the store file of a font and size, which is also its key in the cache. the name is built
+     * once per font and size
+     */
+    private static String storeKey(int pixels, String fontName) {
+        return storeKeys.computeIfAbsent(fontName, f -> new ConcurrentHashMap<>()).computeIfAbsent(pixels,
+                p -> String.format(STORE_FILE_FORMAT, escapeFontName(fontName), p));
+    }
+
+    /**
+     * escapes a font name for a filename: letters and digits are kept, and every other char, including _,
+     * is replaced by _ and its 4 hex digit code, so two fonts never share a file
+     */
+    private static String escapeFontName(String fontName) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : fontName.toCharArray()) {
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                escaped.append(c);
+            } else {
+                escaped.append(String.format(ESCAPED_CHAR_FORMAT, (int) c));
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * the store directory given in the system properties, if any
+     */
+    private static File initialStoreDirectory() {
+        String directory = System.getProperty(STORE_DIRECTORY_PROPERTY);
+        return directory == null ? null : new File(directory);
+    }
+}
@@ -0,0 +1,205 @@
+package ascii_art.img_to_char;
+
+import java.util.Arrays;
+
+/**
+ * a lookup table from the shape and the brightness of a tile to the char that looks the most like it. the
+ * shape of a tile or a glyph is an 8x8 grid of cells packed into a long, one bit per cell, set where the
+ * cell is brighter than the whole tile. the distance between a tile and a glyph is the difference of their
+ * brightness levels plus the number of cells whose bits differ, the cells counting less in tiles of low
+ * contrast, whose shape is mostly noise. the glyphs are kept sorted by brightness with a table of 256
+ * buckets into them, like CharBrightnessIndex, and a lookup walks outwards from the tile's brightness until
+ * the brightness difference alone is more than the best distance found, so with large char sets only the
+ * glyphs of about the right brightness are compared. a lookup returns the same index as a linear scan that
+ * keeps the first closest char
+ */
+class GlyphShapeIndex {
+
+    static final int SHAPE_SIZE = 8;
+    static final int SHAPE_BITS = SHAPE_SIZE * SHAPE_SIZE;
+    //a tile whose cells differ by this much counts its shape fully
+    private static final double FULL_CONTRAST = 0.5;
+    private static final int BUCKETS = 256;
+    private static final double BRIGHTNESS_WEIGHT = 2 * SHAPE_BITS;
+
+    private final double[] sortedBrightness;
+    private final long[] sortedShapes;
+    private final int[] charIndices;
+    private final int[] bucketStart = new int[BUCKETS];
+
+
+    /**
+     * builds the index. chars whose level is not a number (a char set whose chars are all equally bright)
+     * never match
+     *
+     * @param chars           the chars, in their order
+     * @param charsBrightness the normalized brightness of each char, by the chars' order
+     * @param pixels          the size the glyphs are rendered in
+     * @param font            the font the glyphs are rendered in
+     */
+    GlyphShapeIndex(char[] chars, double[] charsBrightness, int pixels, String font) {
+        Integer[] order = new Integer[chars.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (first, second) -> {
+            int compare = Double.compare(charsBrightness[first], charsBrightness[second]);
+            return compare != 0 ? compare : Integer.compare(first, second);
+        });
+        double[] levels = new double[order.length];
+        long[] shapes = new long[order.length];
+        int[] indices = new int[order.length];
+        int size = 0;
+        for (int charIndex : order) {
+            if (Double.isNaN(charsBrightness[charIndex])) {
+                continue;
+            }
+            levels[size] = charsBrightness[charIndex];
+            shapes[size] = glyphShape(CharRenderer.getImg(chars[charIndex], pixels, font));
+            indices[size] = charIndex;
+            size++;
+        }
+        sortedBrightness = Arrays.copyOf(levels, size);
+        sortedShapes = Arrays.copyOf(shapes, size);
+        charIndices = Arrays.copyOf(indices, size);
+        int position = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            while (position < size && sortedBrightness[position] < (double) bucket / BUCKETS) {
+                position++;
+            }
+            bucketStart[bucket] = position;
+        }
+    }
+
+    /**
+     * finds the char that looks the most like a tile
+     *
+     * @param brightness  the brightness of the tile, between 0 and 1
+     * @param shape       the shape of the tile
+     * @param shapeWeight how much the shape of the tile counts, as found by shapeWeight
+     * @return the index of the matching char in the chars' order, or 0 if there are no chars to match
+     */
+    int closestIndex(double brightness, long shape, double shapeWeight) {
+        if (sortedBrightness.length == 0 || Double.isNaN(brightness)) {
+            return 0;
+        }
+        int bucket = Math.min(Math.max((int) (brightness * BUCKETS), 0), BUCKETS - 1);
+        int upper = bucketStart[bucket];
+        while (upper < sortedBrightness.length && sortedBrightness[upper] < brightness) {
+            upper++;
+        }
+        int lower = upper - 1;
+        double closestDistance = Double.POSITIVE_INFINITY;
+        int closestChar = Integer.MAX_VALUE;
+        while (lower >= 0 || upper < sortedBrightness.length) {
+            //take the glyph of the side whose brightness is closer, the one that may still be closer
+            double lowerBound = lower >= 0 ?
+                    BRIGHTNESS_WEIGHT * (brightness - sortedBrightness[lower]) : Double.POSITIVE_INFINITY;
+            double upperBound = upper < sortedBrightness.length ?
+                    BRIGHTNESS_WEIGHT * (sortedBrightness[upper] - brightness) : Double.POSITIVE_INFINITY;
+            int position = lowerBound <= upperBound ? lower-- : upper++;
+            double bound = Math.min(lowerBound, upperBound);
+            if (bound > closestDistance) {
+                break;
+            }
+            double distance = bound + shapeWeight * Long.bitCount(shape ^ sortedShapes[position]);
+            if (distance < closestDistance ||
+                    (distance == closestDistance && charIndices[position] < closestChar)) {
+                closestDistance = distance;
+                closestChar = charIndices[position];
+            }
+        }
+        return closestChar;
+    }
+
+    /**
+     * averages the cells of a tile of an image. tiles smaller than the grid repeat their pixels over
+     * several cells
+     *
+     * @param integralImage the brightness table of the image
+     * @param x             the left column of the tile
+     * @param y             the top row of the tile
+     * @param tileWidth     the width of the tile in pixels
+     * @param tileHeight    the height of the tile in pixels
+     * @param cells         receives the brightness of the SHAPE_BITS cells, row after row
+     */
+    static void tileCells(BrightnessIntegralImage integralImage, int x, int y, int tileWidth, int tileHeight,
+                          double[] cells) {
+        for (int row = 0; row < SHAPE_SIZE; row++) {
+            int top = y + row * tileHeight / SHAPE_SIZE;
+            int cellHeight = Math.max(1, y + (row + 1) * tileHeight / SHAPE_SIZE - top);
+            for (int col = 0; col < SHAPE_SIZE; col++) {
+                int left = x + col * tileWidth / SHAPE_SIZE;
+                int cellWidth = Math.max(1, x + (col + 1) * tileWidth / SHAPE_SIZE - left);
+                cells[row * SHAPE_SIZE + col] =
+                        integralImage.averageBrightness(left, top, cellWidth, cellHeight);
+            }
+        }
+    }
+
+    /**
+     * packs the cells of a tile or a glyph into its shape
+     *
+     * @param cells      the brightness of the SHAPE_BITS cells, row after row
+     * @param brightness the average brightness of the whole tile or glyph
+     * @return the shape, a bit for every cell brighter than the average
+     */
+    static long shape(double[] cells, double brightness) {
+        long shape = 0;
+        for (int cell = 0; cell < SHAPE_BITS; cell++) {
+            if (cells[cell] > brightness) {
+                shape |= 1L << cell;
+            }
+        }
+        return shape;
+    }
+
+    /**
+     * how much the shape of a tile counts against its brightness. a flat tile has no shape to match and is
+     * matched by its brightness alone, and a tile of strong edges by its shape as much as a glyph's
+     *
+     * @param cells the brightness of the SHAPE_BITS cells of the tile
+     * @return the weight of the shape, between 0 and 1
+     */
+    static double shapeWeight(double[] cells) {
+        double minCell = 1, maxCell = 0;
+        for (double cell : cells) {
+            minCell = Math.min(minCell, cell);
+            maxCell = Math.max(maxCell, cell);
+        }
+        return Math.min(1, Math.max(0, maxCell - minCell) / FULL_CONTRAST);
+    }
+
+    /**
+     * the shape of a rendered glyph, made the same way as the shape of a tile from its bright pixels
+     *
+     * @param glyph the rendered glyph, a square whose true pixels are bright
+     * @return the shape of the glyph
+     */
+    static long glyphShape(boolean[][] glyph) {
+        int pixels = glyph.length;
+        double[] cells = new double[SHAPE_BITS];
+        for (int row = 0; row < SHAPE_SIZE; row++) {
+            int top = row * pixels / SHAPE_SIZE;
+            int bottom = Math.max(top + 1, (row + 1) * pixels / SHAPE_SIZE);
+            for (int col = 0; col < SHAPE_SIZE; col++) {
+                int left = col * pixels / SHAPE_SIZE;
+                int right = Math.max(left + 1, (col + 1) * pixels / SHAPE_SIZE);
+                int brightPixels = 0;
+                for (int py = top; py < bottom; py++) {
+                    for (int px = left; px < right; px++) {
+                        if (glyph[py][px]) {
+                            brightPixels++;
+                        }
+                    }
+                }
+                cells[row * SHAPE_SIZE + col] = (double) brightPixels / ((bottom - top) * (right - left));
+            }
+        }
+        double brightness = 0;
+        for (double cell : cells) {
+            brightness += cell;
+        }
+        return shape(cells, brightness / SHAPE_BITS);
+    }
+}
@@ -0,0 +1,234 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+
+import java.util.Arrays;
+
+/**
+ * an image with the tables its conversions need, built once when it is created: the summed-area table of
+ * its brightness and, optionally, the brightness of its tiles at a range of resolutions. a prepared image
+ * never changes after it is created, so any number of threads can convert it at once, each at its own
+ * resolution and with its own chars, without locking. the colors of the tiles are read from the image
+ * itself, so they can be found by several threads only if the image can be read by several threads, as
+ * the images of Image.fromFile can. an image too large for a summed-area table, like the images of
+ * Image.fromFileStreaming, can be prepared without one with streamed
+ */
+public class PreparedImage {
+
+    private final Image img;
+    private final BrightnessIntegralImage integralImage;
+    private final BrightnessPyramid pyramid;
+
+
+    /**
+     * prepares an image for conversions at any resolution
+     *
+     * @param img the image to convert
+     */
+    public PreparedImage(Image img) {
+        this(img, new BrightnessIntegralImage(img));
+    }
+
+    private PreparedImage(Image img, BrightnessIntegralImage integralImage) {
+        this.img = img;
+        this.integralImage = integralImage;
+        this.pyramid = null;
+    }
+
+    /**
+     * prepares an image without building its summed-area table, whose size grows with the number of pixels.
+     * the brightness of the tiles is calculated at every conversion instead, a row of tiles at a time, from
+     * the rows of the image, so a conversion keeps only a row of pixels and the brightness of a row of tiles
+     * besides its result
+     *
+     * @param img the image to convert
+     * @return the prepared image
+     */
+    public static PreparedImage streamed(Image img) {
+        return new PreparedImage(img, null);
+    }
+
+    /**
+     * prepares an image, and calculates ahead of time the brightness of its tiles at every resolution between
+     * the given limits, so converting it at one of them only matches chars. the resolutions are calculated
+     * only for images whose dimensions are powers of 2, whose tiles are all equal squares
+     *
+     * @param img           the image to convert
+     * @param minCharsInRow the smallest number of chars in a row to prepare, a power of 2
+     * @param maxCharsInRow the largest number of chars in a row to prepare, a power of 2
+     * @throws IllegalArgumentException if the range is empty or wider than the image
+     */
+    public PreparedImage(Image img, int minCharsInRow, int maxCharsInRow) {
+        this(img, new BrightnessIntegralImage(img), minCharsInRow, maxCharsInRow);
+    }
+
+    private PreparedImage(Image img, BrightnessIntegralImage integralImage, int minCharsInRow,
+                          int maxCharsInRow) {
+        this.img = img;
+        this.integralImage = integralImage;
+        //the levels are exact 2x2 reductions of each other only when all the tiles are equal squares
+        this.pyramid = BrightnessImgCharMatcher.hasPowerOfTwoDimensions(img) ?
+                new BrightnessPyramid(integralImage, minCharsInRow, maxCharsInRow) : null;
+    }
+
+    /**
+     * prepares the same image with the brightness of its tiles at a range of resolutions, reusing its
+     * summed-area table
+     *
+     * @param minCharsInRow the smallest number of chars in a row to prepare, a power of 2
+     * @param maxCharsInRow the largest number of chars in a row to prepare, a power of 2
+     * @return the new prepared image. this one doesn't change
+     * @throws IllegalArgumentException if the range is empty or wider than the image
+     */
+    PreparedImage withResolutions(int minCharsInRow, int maxCharsInRow) {
+        if (integralImage == null) {
+            return this;
+        }
+        return new PreparedImage(img, integralImage, minCharsInRow, maxCharsInRow);
+    }
+
+    /**
+     * @return the width of the image
+     */
+    public int getWidth() {
+        return img.getWidth();
+    }
+
+    /**
+     * @return the height of the image
+     */
+    public int getHeight() {
+        return img.getHeight();
+    }
+
+    /**
+     * @param numCharsInRow the number of chars in a row that the user wants
+     * @return the number of chars in a row the image is actually converted to
+     */
+    public int resolveNumCharsInRow(int numCharsInRow) {
+        return BrightnessImgCharMatcher.resolveNumCharsInRow(img, numCharsInRow);
+    }
+
+    /**
+     * @param numCharsInRow number of chars in each row, as returned by resolveNumCharsInRow
+     * @return the brightness of the tiles, row after row, if it was calculated when the image was prepared,
+     * or null. the array is shared and must not be changed
+     */
+    double[] getPreparedBrightness(int numCharsInRow) {
+        return pyramid == null ? null : pyramid.getLevel(numCharsInRow);
+    }
+
+    /**
+     * @param numCharsInRow number of chars in each row, as returned by resolveNumCharsInRow
+     * @return the brightness of the tiles, row after row. the array must not be changed, since it may be
+     * the one calculated when the image was prepared
+     */
+    double[] getTileBrightness(int numCharsInRow) {
+        double[] tileBrightness = getPreparedBrightness(numCharsInRow);
+        if (tileBrightness != null) {
+            return tileBrightness;
+        }
+        return integralImage != null ?
+                BrightnessImgCharMatcher.calculateImageBrightness(integralImage, numCharsInRow) :
+                calculateStreamedBrightness(numCharsInRow);
+    }
+
+    /**
+     * calculates the brightness and the shape of the tiles from the summed-area table, and how much the shape
+     * of each tile counts
+     *
+     * @param numCharsInRow number of chars in each row, as returned by resolveNumCharsInRow
+     * @return the tiles, row after row
+     * @throws IllegalStateException if the image was prepared without its summed-area table, by streamed
+     */
+    TileShapes getTileShapes(int numCharsInRow) {
+        if (integralImage == null) {
+            throw new IllegalStateException("the shapes of the tiles need the summed-area table of the " +
+                    "image");
+        }
+        TileGrid grid = new TileGrid(img.getWidth(), img.getHeight(), numCharsInRow);
+        double[] tileBrightness = getTileBrightness(numCharsInRow);
+        long[] tileShapes = new long[tileBrightness.length];
+        double[] shapeWeights = new double[tileBrightness.length];
+        double[] cells = new double[GlyphShapeIndex.SHAPE_BITS];
+        for (int rowIndex = 0; rowIndex < grid.getNumOfRows(); rowIndex++) {
+            int top = grid.getTop(rowIndex), tileHeight = grid.getTop(rowIndex + 1) - top;
+            for (int colIndex = 0; colIndex < numCharsInRow; colIndex++) {
+                int tile = rowIndex * numCharsInRow + colIndex;
+                int left = grid.getLeft(colIndex);
+                int tileWidth = grid.getLeft(colIndex + 1) - left;
+                GlyphShapeIndex.tileCells(integralImage, left, top, tileWidth, tileHeight, cells);
+                tileShapes[tile] = GlyphShapeIndex.shape(cells, tileBrightness[tile]);
+                shapeWeights[tile] = GlyphShapeIndex.shapeWeight(cells);
+            }
+        }
+        return new TileShapes(tileBrightness, tileShapes, shapeWeights);
+    }
+
+    /**
+     * calculates the brightness of the tiles from the rows of the image, one band of rows the height of a
+     * row of tiles at a time, summing the brightness of the pixels of every tile of the band
+     *
+     * @param numCharsInRow number of chars in each row, as returned by resolveNumCharsInRow
+     * @return the brightness of the tiles, row after row
+     */
+    private double[] calculateStreamedBrightness(int numCharsInRow) {
+        TileGrid grid = new TileGrid(img.getWidth(), img.getHeight(), numCharsInRow);
+        double[] tileBrightness = new double[grid.getNumOfRows() * numCharsInRow];
+        BrightnessImgCharMatcher.calculateImageBrightness(img, grid, 0, grid.getNumOfRows(), 0, numCharsInRow,
+                tileBrightness);
+        return tileBrightness;
+    }
+
+    /**
+     * averages the color of each tile in one pass over the rows of the image, summing every channel of a
+     * row of tiles before dividing by the area of each tile
+     *
+     * @param numCharsInRow number of chars in each row, as returned by resolveNumCharsInRow
+     * @return the packed RGB average color of each tile
+     */
+    int[][] calculateTileColors(int numCharsInRow) {
+        TileGrid grid = new TileGrid(img.getWidth(), img.getHeight(), numCharsInRow);
+        int[][] tileColors = new int[grid.getNumOfRows()][numCharsInRow];
+        long[] sums = new long[numCharsInRow * 3];
+        int[] row = new int[img.getWidth()];
+        for (int rowIndex = 0; rowIndex < grid.getNumOfRows(); rowIndex++) {
+            Arrays.fill(sums, 0);
+            for (int y = grid.getTop(rowIndex); y < grid.getTop(rowIndex + 1); y++) {
+                img.getRowRgb(0, y, row.length, row, 0);
+                for (int colIndex = 0; colIndex < numCharsInRow; colIndex++) {
+                    int sum = colIndex * 3;
+                    for (int x = grid.getLeft(colIndex); x < grid.getLeft(colIndex + 1); x++) {
+                        sums[sum] += (row[x] >> 16) & 0xff;
+                        sums[sum + 1] += (row[x] >> 8) & 0xff;
+                        sums[sum + 2] += row[x] & 0xff;
+                    }
+                }
+            }
+            long tileHeight = grid.getTop(rowIndex + 1) - grid.getTop(rowIndex);
+            for (int colIndex = 0; colIndex < numCharsInRow; colIndex++) {
+                int sum = colIndex * 3;
+                long pixelsInTile = tileHeight * (grid.getLeft(colIndex + 1) - grid.getLeft(colIndex));
+                tileColors[rowIndex][colIndex] = (int) (sums[sum] / pixelsInTile) << 16 |
+                        (int) (sums[sum + 1] / pixelsInTile) << 8 | (int) (sums[sum + 2] / pixelsInTile);
+            }
+        }
+        return tileColors;
+    }
+
+    /**
+     * the brightness and the shape of the tiles of an image at one resolution, and how much the shape of
+     * each tile counts, row after row. the arrays must not be changed
+     */
+    static class TileShapes {
+        final double[] brightness;
+        final long[] shapes;
+        final double[] shapeWeights;
+
+        private TileShapes(double[] brightness, long[] shapes, double[] shapeWeights) {
+            this.brightness = brightness;
+            this.shapes = shapes;
+            this.shapeWeights = shapeWeights;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package ascii_art.img_to_char;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * the time spent in every stage of converting an image and writing it, over all the renders of a matcher
+ * and in the last one, with counters of the work done and of the caches that saved work. glyph
+ * rasterization is counted by the glyph cache for all the matchers together, since it happens when chars
+ * are added to a set rather than in a render. the stats of a matcher are updated by the thread that uses it
+ */
+public class RenderStats {
+
+    /**
+     * the stages of a render
+     */
+    public enum Stage {
+        /**
+         * finding the brightness (and the colors) of the image's tiles
+         */
+        TILING,
+        /**
+         * normalizing the brightness of the chars and building their lookup table
+         */
+        NORMALIZATION,
+        /**
+         * choosing a char for every tile
+         */
+        MATCHING,
+        /**
+         * writing the chars
+         */
+        OUTPUT
+    }
+
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final String STAGE_HEADER =
+            String.format("%-14s%12s%12s%n", "stage", "last ms", "total ms");
+    private static final String STAGE_FORMAT = "%-14s%12.3f%12.3f%n";
+    private static final String GLYPHS_FORMAT = "%-14s%12s%12.3f%n";
+    private static final String NO_VALUE = "-";
+    private static final String GLYPHS = "glyphs";
+
+    private final long[] totalNanos = new long[Stage.values().length];
+    private final long[] lastNanos = new long[Stage.values().length];
+    private long renders = 0;
+    private long tiles = 0;
+    private long tileCacheHits = 0;
+    private long tileCacheMisses = 0;
+    private long charSetCacheHits = 0;
+    private long charSetCacheMisses = 0;
+    private long bytesWritten = 0;
+    private long lastBytesWritten = 0;
+
+
+    /**
+     * starts counting a new render, whose stages become the last ones
+     */
+    void startRender() {
+        renders++;
+        Arrays.fill(lastNanos, 0);
+        lastBytesWritten = 0;
+    }
+
+    /**
+     * adds time to a stage of the current render
+     *
+     * @param stage the stage
+     * @param nanos the time spent, in nanoseconds
+     */
+    void addTime(Stage stage, long nanos) {
+        totalNanos[stage.ordinal()] += nanos;
+        lastNanos[stage.ordinal()] += nanos;
+    }
+
+    /**
+     * counts tiles that a char was chosen for
+     */
+    void addTiles(long numOfTiles) {
+        tiles += numOfTiles;
+    }
+
+    /**
+     * counts a render whose tile brightness was already known (true) or had to be calculated (false)
+     */
+    void countTileCache(boolean hit) {
+        if (hit) {
+            tileCacheHits++;
+        } else {
+            tileCacheMisses++;
+        }
+    }
+
+    /**
+     * counts a render whose chars' lookup table was already built (true) or had to be built (false)
+     */
+    void countCharSetCache(boolean hit) {
+        if (hit) {
+            charSetCacheHits++;
+        } else {
+            charSetCacheMisses++;
+        }
+    }
+
+    /**
+     * adds the writing of the current render's chars
+     *
+     * @param nanos the time spent writing, in nanoseconds
+     * @param bytes the number of bytes written, or a negative number if the output doesn't know it
+     */
+    public void addOutput(long nanos, long bytes) {
+        addTime(Stage.OUTPUT, nanos);
+        if (bytes > 0) {
+            bytesWritten += bytes;
+            lastBytesWritten += bytes;
+        }
+    }
+
+    /**
+     * @param stage a stage
+     * @return the time spent in the stage over all the renders, in nanoseconds
+     */
+    public long getTotalNanos(Stage stage) {
+        return totalNanos[stage.ordinal()];
+    }
+
+    /**
+     * @param stage a stage
+     * @return the time spent in the stage in the last render, in nanoseconds
+     */
+    public long getLastNanos(Stage stage) {
+        return lastNanos[stage.ordinal()];
+    }
+
+    /**
+     * @return the number of renders
+     */
+    public long getRenders() {
+        return renders;
+    }
+
+    /**
+     * @return the stats as a table for people to read
+     */
+    public String format() {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("renders: %d, tiles: %d, bytes written: %d (last render %d)%n",
+                renders, tiles, bytesWritten, lastBytesWritten));
+        table.append(STAGE_HEADER);
+        for (Stage stage : Stage.values()) {
+            table.append(String.format(Locale.ROOT, STAGE_FORMAT, stage.name().toLowerCase(Locale.ROOT),
+                    lastNanos[stage.ordinal()] / NANOS_PER_MILLI,
+                    totalNanos[stage.ordinal()] / NANOS_PER_MILLI));
+        }
+        table.append(String.format(Locale.ROOT, GLYPHS_FORMAT, GLYPHS, NO_VALUE,
+                GlyphBrightnessCache.getRenderNanos() / NANOS_PER_MILLI));
+        table.append(String.format("tile cache: %d hits, %d misses; char set cache: %d hits, %d misses; " +
+                        "glyph cache: %d lookups, %d rasterized%n", tileCacheHits, tileCacheMisses,
+                charSetCacheHits, charSetCacheMisses, GlyphBrightnessCache.getLookups(),
+                GlyphBrightnessCache.getRenders()));
+        return table.toString();
+    }
+
+    /**
+     * @return the stats as a single line of JSON, for tools to read. times are in nanoseconds
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append(String.format("{\"renders\":%d,\"tiles\":%d,\"bytesWritten\":%d,\"lastBytesWritten\":%d,",
+                renders, tiles, bytesWritten, lastBytesWritten));
+        json.append("\"stages\":{");
+        for (Stage stage : Stage.values()) {
+            json.append(String.format("\"%s\":{\"lastNanos\":%d,\"totalNanos\":%d},",
+                    stage.name().toLowerCase(Locale.ROOT), lastNanos[stage.ordinal()],
+                    totalNanos[stage.ordinal()]));
+        }
+        json.append(String.format("\"%s\":{\"totalNanos\":%d}},",
+                GLYPHS, GlyphBrightnessCache.getRenderNanos()));
+        json.append(String.format("\"tileCache\":{\"hits\":%d,\"misses\":%d},",
+                tileCacheHits, tileCacheMisses));
+        json.append(String.format("\"charSetCache\":{\"hits\":%d,\"misses\":%d},",
+                charSetCacheHits, charSetCacheMisses));
+        json.append(String.format("\"glyphCache\":{\"lookups\":%d,\"rasterized\":%d}}",
+                GlyphBrightnessCache.getLookups(), GlyphBrightnessCache.getRenders()));
+        return json.toString();
+    }
+}
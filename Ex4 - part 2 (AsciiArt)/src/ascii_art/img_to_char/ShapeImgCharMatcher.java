@@ -0,0 +1,86 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+
+/**
+ * a class that converts an img to Ascii representation by the shape of its tiles as well as their
+ * brightness. each tile is compared with the glyphs as an 8x8 grid of cells, so an edge or a line in the
+ * image is drawn with a char that has a similar edge or line, and the image keeps its details at half the
+ * resolution that BrightnessImgCharMatcher needs. the shapes of the tiles are found from the summed-area
+ * table of a PreparedImage, which can be shared with a BrightnessImgCharMatcher of the same image, and the
+ * shapes of the glyphs are kept by the tables of the char set. this class keeps only the stats of one user
+ * of the image, so it is used by one thread
+ */
+public class ShapeImgCharMatcher {
+
+    private final PreparedImage image;
+    private final RenderStats stats = new RenderStats();
+
+
+    /**
+     * creates an instance of the class
+     *
+     * @param img the img to convert to Ascii
+     */
+    public ShapeImgCharMatcher(Image img) {
+        this(new PreparedImage(img));
+    }
+
+    /**
+     * creates an instance of the class that converts an image that was already prepared
+     *
+     * @param image the image to convert, prepared with its summed-area table
+     */
+    public ShapeImgCharMatcher(PreparedImage image) {
+        this.image = image;
+    }
+
+    /**
+     * transforms the image to the chars of a set that look the most like its tiles. the chars and their
+     * shapes are taken together from the set, as they are when the conversion starts
+     *
+     * @param numCharsInRow the number of char the user wants in a row
+     * @param charSet       the Ascii chars to compile the image with
+     * @return an array of chars that represents the image
+     * @throws IllegalStateException if the image was prepared without its summed-area table
+     */
+    public char[][] chooseChars(int numCharsInRow, CharSetBrightness charSet) {
+        stats.startRender();
+        long start = System.nanoTime();
+        CharSetBrightness.Tables tables = charSet.getTables();
+        stats.countCharSetCache(tables.hasShapeIndex());
+        GlyphShapeIndex shapeIndex = tables.getShapeIndex();
+        long normalized = System.nanoTime();
+        stats.addTime(RenderStats.Stage.NORMALIZATION, normalized - start);
+
+        numCharsInRow = image.resolveNumCharsInRow(numCharsInRow);
+        PreparedImage.TileShapes tiles = image.getTileShapes(numCharsInRow);
+        stats.countTileCache(false);
+        long tiled = System.nanoTime();
+        stats.addTime(RenderStats.Stage.TILING, tiled - normalized);
+
+        char[][] asciiArt = new char[tiles.brightness.length / numCharsInRow][numCharsInRow];
+        if (tables.chars.length > 0) {
+            for (int row = 0; row < asciiArt.length; row++) {
+                for (int col = 0; col < numCharsInRow; col++) {
+                    int tile = row * numCharsInRow + col;
+                    asciiArt[row][col] = tables.chars[shapeIndex.closestIndex(tiles.brightness[tile],
+                            tiles.shapes[tile], tiles.shapeWeights[tile])];
+                }
+            }
+        }
+        stats.addTime(RenderStats.Stage.MATCHING, System.nanoTime() - tiled);
+        stats.addTiles(tiles.brightness.length);
+        return asciiArt;
+    }
+
+    /**
+     * returns the time spent in each stage of the conversions of this matcher, and the work they did. the
+     * output stage is added by whoever writes the chars
+     *
+     * @return the stats of this matcher, which keep changing as it converts the image
+     */
+    public RenderStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,92 @@
+package ascii_art.img_to_char;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * converts prepared images to Ascii chars by the brightness of their tiles. the matcher keeps nothing
+ * between conversions, and neither does the prepared image, so one matcher can convert any number of
+ * images, or one image at many resolutions and with many char sets, from many threads at once
+ */
+public class TileCharMatcher {
+
+    private final boolean dithering;
+    private final ForkJoinPool workerPool;
+
+
+    /**
+     * creates a matcher that matches every tile on its own, in the calling thread
+     */
+    public TileCharMatcher() {
+        this(false, null);
+    }
+
+    /**
+     * creates a matcher
+     *
+     * @param dithering  true to diffuse the brightness the chars can't match to the neighboring tiles, so
+     *                   smooth gradients are drawn without bands. a dithered image is converted serially
+     * @param workerPool the threads to convert the tile rows of an image with, or null to convert them in
+     *                   the calling thread
+     */
+    public TileCharMatcher(boolean dithering, ForkJoinPool workerPool) {
+        this.dithering = dithering;
+        this.workerPool = workerPool;
+    }
+
+    /**
+     * transforms a prepared image to Ascii chars
+     *
+     * @param image         the image to convert
+     * @param numCharsInRow the number of char the user wants in a row
+     * @param charSet       the Ascii chars to compile the image with, as they are when the conversion starts
+     * @return an array of chars that represents the image
+     */
+    public char[][] chooseChars(PreparedImage image, int numCharsInRow, CharSetBrightness charSet) {
+        numCharsInRow = image.resolveNumCharsInRow(numCharsInRow);
+        CharSetBrightness.Tables tables = charSet.getTables();
+        double[] tileBrightness = image.getTileBrightness(numCharsInRow);
+        return convertTileBrightnessToAscii(tables.chars, tables.index, tileBrightness, numCharsInRow);
+    }
+
+    /**
+     * finds the average color of every tile of a prepared image, at the same resolution chooseChars
+     * converts the image to
+     *
+     * @param image         the image
+     * @param numCharsInRow the number of char the user wants in a row
+     * @return the packed RGB average color of each tile, by the indices of the chars
+     */
+    public int[][] chooseColors(PreparedImage image, int numCharsInRow) {
+        return image.calculateTileColors(image.resolveNumCharsInRow(numCharsInRow));
+    }
+
+    /**
+     * replaces each tile of the image with a matching Ascii char by matching the brightness level, in
+     * parallel if there are worker threads, or with the error diffused if dithering
+     *
+     * @param charSet         the chars to replace the image with
+     * @param charsBrightness a lookup table of the chars' brightness level
+     * @param tileBrightness  the brightness of the tiles, row after row
+     * @param numCharsInRow   how many chars to put in a row
+     * @return a list representing the image in Ascii
+     */
+    char[][] convertTileBrightnessToAscii(char[] charSet, CharBrightnessIndex charsBrightness,
+                                          double[] tileBrightness, int numCharsInRow) {
+        char[][] asciiArt = new char[tileBrightness.length / numCharsInRow][numCharsInRow];
+        if (charSet.length == 0) {
+            return asciiArt;
+        }
+        if (dithering) {
+            TileDitherer.convertRows(tileBrightness, numCharsInRow, charSet, charsBrightness, asciiArt);
+            return asciiArt;
+        }
+        TileRowsTask task = new TileRowsTask(tile -> tileBrightness[tile], charsBrightness::closestIndex,
+                charSet, asciiArt, 0, asciiArt.length);
+        if (workerPool != null) {
+            workerPool.invoke(task);
+        } else {
+            task.convertRows();
+        }
+        return asciiArt;
+    }
+}
@@ -0,0 +1,85 @@
+package ascii_art.img_to_char;
+
+/**
+ * converts tiles to chars with Floyd-Steinberg error diffusion: the difference between the brightness of a
+ * tile and of the char chosen for it is passed on to the tiles to its right and below it, so a smooth
+ * gradient is drawn as a mix of the chars around it instead of bands of one char. the tiles are converted
+ * in a single pass, row after row, and the error is carried in one row of width + 2 values: the part of
+ * the row left of the current tile already holds the error for the next row, and the rest still holds the
+ * error for this one. the error is not passed across an edge, where the brightness of two neighboring
+ * tiles differs a lot, so edges stay sharp and the error of a dark area doesn't leak into a bright one
+ */
+class TileDitherer {
+
+    private static final double RIGHT_SHARE = 7 / 16.0;
+    private static final double BELOW_LEFT_SHARE = 3 / 16.0;
+    private static final double BELOW_SHARE = 5 / 16.0;
+    private static final double BELOW_RIGHT_SHARE = 1 / 16.0;
+    //neighboring tiles whose brightness differs by this much are on two sides of an edge
+    private static final double EDGE_THRESHOLD = 0.25;
+
+    private TileDitherer() {
+    }
+
+    /**
+     * converts the tiles of an image to chars, in the calling thread
+     *
+     * @param tileBrightness  the brightness of the tiles, row after row
+     * @param numCharsInRow   how many chars to put in a row
+     * @param charSet         the chars to replace the tiles with
+     * @param charsBrightness a lookup table of the chars' brightness level
+     * @param asciiArt        the array to write the chars to
+     */
+    static void convertRows(double[] tileBrightness, int numCharsInRow, char[] charSet,
+                            CharBrightnessIndex charsBrightness, char[][] asciiArt) {
+        //carry[x + 1] is the error carried to column x
+        double[] carry = new double[numCharsInRow + 2];
+        for (int rowIndex = 0; rowIndex < asciiArt.length; rowIndex++) {
+            int rowStart = rowIndex * numCharsInRow;
+            int nextRowStart = rowIndex + 1 < asciiArt.length ? rowStart + numCharsInRow : -1;
+            double rightError = 0, belowRightError = 0;
+            carry[0] = 0;
+            for (int colIndex = 0; colIndex < numCharsInRow; colIndex++) {
+                double brightness = tileBrightness[rowStart + colIndex];
+                double value = brightness + rightError + carry[colIndex + 1];
+                int charIndex = charsBrightness.closestIndex(value);
+                asciiArt[rowIndex][colIndex] = charSet[charIndex];
+                double error = value - charsBrightness.getBrightness(charIndex);
+                if (Double.isNaN(error)) {
+                    error = 0;
+                }
+
+                rightError = colIndex + 1 < numCharsInRow ? error * RIGHT_SHARE *
+                        edgeWeight(brightness, tileBrightness[rowStart + colIndex + 1]) : 0;
+                //this column's error for this row was used above, so its place takes the next row's error
+                carry[colIndex + 1] = belowRightError;
+                belowRightError = 0;
+                if (nextRowStart >= 0) {
+                    int below = nextRowStart + colIndex;
+                    if (colIndex > 0) {
+                        carry[colIndex] += error * BELOW_LEFT_SHARE *
+                                edgeWeight(brightness, tileBrightness[below - 1]);
+                    }
+                    carry[colIndex + 1] +=
+                            error * BELOW_SHARE * edgeWeight(brightness, tileBrightness[below]);
+                    if (colIndex + 1 < numCharsInRow) {
+                        belowRightError = error * BELOW_RIGHT_SHARE *
+                                edgeWeight(brightness, tileBrightness[below + 1]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * how much of a tile's error is passed to a neighbor: all of it between tiles of the same brightness,
+     * less the more their brightness differs, and none across an edge
+     *
+     * @param brightness         the brightness of the tile
+     * @param neighborBrightness the brightness of the neighbor
+     * @return the share of the error to pass, between 0 and 1
+     */
+    private static double edgeWeight(double brightness, double neighborBrightness) {
+        return Math.max(0, 1 - Math.abs(brightness - neighborBrightness) / EDGE_THRESHOLD);
+    }
+}
@@ -0,0 +1,101 @@
+package ascii_art.img_to_char;
+
+import java.util.Arrays;
+
+/**
+ * the tiles an image is cut into for a number of chars in a row. the tiles are as close to square as the
+ * pixels allow: the image's width is split into numCharsInRow columns and its height into as many rows as
+ * fit tiles of the same nominal size. when the sizes don't divide evenly, the tile edges are rounded down to
+ * whole pixels, so neighboring tiles may differ by one pixel and no pixel is left out or padded. on images
+ * whose dimensions are powers of 2, with a power of 2 chars in a row, every tile is the same square
+ */
+class TileGrid {
+
+    private final int[] columnEdges;
+    private final int[] rowEdges;
+
+
+    /**
+     * cuts an image into tiles
+     *
+     * @param width         the width of the image
+     * @param height        the height of the image
+     * @param numCharsInRow the number of tiles in a row, between 1 and the width of the image
+     */
+    TileGrid(int width, int height, int numCharsInRow) {
+        if (numCharsInRow < 1 || numCharsInRow > width) {
+            throw new IllegalArgumentException("number of chars in a row must be between 1 and " + width +
+                    ": " + numCharsInRow);
+        }
+        long numOfRows = Math.round((double) height * numCharsInRow / width);
+        numOfRows = Math.max(1, Math.min(height, numOfRows));
+        columnEdges = edges(width, numCharsInRow);
+        rowEdges = edges(height, (int) numOfRows);
+    }
+
+    /**
+     * splits a length into parts whose edges are rounded down to whole pixels
+     */
+    private static int[] edges(int length, int parts) {
+        int[] edges = new int[parts + 1];
+        for (int i = 0; i <= parts; i++) {
+            edges[i] = (int) ((long) i * length / parts);
+        }
+        return edges;
+    }
+
+    /**
+     * @return the number of tiles in a row
+     */
+    int getNumOfColumns() {
+        return columnEdges.length - 1;
+    }
+
+    /**
+     * @return the number of rows of tiles
+     */
+    int getNumOfRows() {
+        return rowEdges.length - 1;
+    }
+
+    /**
+     * @param column a column of tiles, or the number of columns for the right edge of the last one
+     * @return the x of the left edge of the column
+     */
+    int getLeft(int column) {
+        return columnEdges[column];
+    }
+
+    /**
+     * @param row a row of tiles, or the number of rows for the bottom edge of the last one
+     * @return the y of the top edge of the row
+     */
+    int getTop(int row) {
+        return rowEdges[row];
+    }
+
+    /**
+     * @param x a column of pixels of the image
+     * @return the column of tiles that covers it
+     */
+    int getColumnAt(int x) {
+        return indexAt(columnEdges, x);
+    }
+
+    /**
+     * @param y a row of pixels of the image
+     * @return the row of tiles that covers it
+     */
+    int getRowAt(int y) {
+        return indexAt(rowEdges, y);
+    }
+
+    /**
+     * finds the part of a length that covers a position, by the edges of the parts
+     */
+    private static int indexAt(int[] edges, int position) {
+        int index = Arrays.binarySearch(edges, position);
+        //a position between two edges belongs to the part that starts at the lower one
+        return index >= 0 ? Math.min(index, edges.length - 2) : -index - 2;
+    }
+}
@@ -0,0 +1,68 @@
+package ascii_art.img_to_char;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleToIntFunction;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * a fork-join task that converts a range of tile rows of an image to chars. the range is split in half
+ * until it is small enough, and every row is written only by the task that owns it, so the tasks need
+ * no locking
+ */
+class TileRowsTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+    private static final int ROWS_PER_TASK = 4;
+
+    private final IntToDoubleFunction tileBrightness;
+    private final DoubleToIntFunction closestChar;
+    private final char[] charSet;
+    private final char[][] asciiArt;
+    private final int fromRow;
+    private final int toRow;
+
+
+    /**
+     * creates a task for the rows [fromRow, toRow) of asciiArt
+     *
+     * @param tileBrightness maps the index of a tile (counting row after row) to its brightness
+     * @param closestChar    maps a tile brightness to the index of the closest char in charSet
+     * @param charSet        the chars to replace the tiles with
+     * @param asciiArt       the array to write the chars to
+     * @param fromRow        the first row of the task
+     * @param toRow          the row after the last row of the task
+     */
+    TileRowsTask(IntToDoubleFunction tileBrightness, DoubleToIntFunction closestChar, char[] charSet,
+                 char[][] asciiArt, int fromRow, int toRow) {
+        this.tileBrightness = tileBrightness;
+        this.closestChar = closestChar;
+        this.charSet = charSet;
+        this.asciiArt = asciiArt;
+        this.fromRow = fromRow;
+        this.toRow = toRow;
+    }
+
+    @Override
+    protected void compute() {
+        if (toRow - fromRow <= ROWS_PER_TASK) {
+            convertRows();
+            return;
+        }
+        int middle = (fromRow + toRow) >>> 1;
+        invokeAll(new TileRowsTask(tileBrightness, closestChar, charSet, asciiArt, fromRow, middle),
+                new TileRowsTask(tileBrightness, closestChar, charSet, asciiArt, middle, toRow));
+    }
+
+    /**
+     * converts the rows of this task directly, in the calling thread
+     */
+    void convertRows() {
+        for (int rowIndex = fromRow; rowIndex < toRow; rowIndex++) {
+            char[] row = asciiArt[rowIndex];
+            for (int colIndex = 0; colIndex < row.length; colIndex++) {
+                double brightness = tileBrightness.applyAsDouble(rowIndex * row.length + colIndex);
+                row[colIndex] = charSet[closestChar.applyAsInt(brightness)];
+            }
+        }
+    }
+}
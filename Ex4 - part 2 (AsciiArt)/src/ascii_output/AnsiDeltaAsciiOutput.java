@@ -0,0 +1,147 @@
+package ascii_output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.logging.Logger;
+
+/**
+ * Output a stream of 2D arrays of chars (the frames of an animation) to an ANSI terminal.
+ * The first frame is drawn whole. Every later frame is compared with the one before it, and only
+ * the runs of chars that changed are written, each after an escape sequence that moves the cursor
+ * to it, so a frame that changed a little costs a few bytes even at a high resolution.
+ * The chars are laid out as in ConsoleAsciiOutput, each followed by a space.
+ */
+public class AnsiDeltaAsciiOutput implements AsciiOutput {
+    private static final int WRITER_BUFFER_SIZE = 1 << 16;
+    private static final char SEPARATOR = ' ';
+    private static final int CELL_WIDTH = 2;
+    private static final String CLEAR_SCREEN = "\033[2J";
+    private static final String CURSOR_POSITION_FORMAT = "\033[%d;%dH";
+    //an unchanged gap shorter than this is rewritten instead of jumping over it with a cursor move
+    private static final int MIN_SKIPPED_CELLS = 4;
+
+    private final CountingOutputStream stream;
+    private final Writer writer;
+    private char[][] prevChars = null;
+    private char[] rowBuffer = new char[0];
+    private long lastFrameBytes = 0;
+    private int lastFrameRuns = 0;
+
+    /**
+     * Writes to the console.
+     */
+    public AnsiDeltaAsciiOutput() {
+        this(System.out);
+    }
+
+    /**
+     * @param out the stream to write the escape sequences and chars to, such as a terminal's
+     */
+    public AnsiDeltaAsciiOutput(OutputStream out) {
+        stream = new CountingOutputStream(out);
+        writer = new BufferedWriter(new OutputStreamWriter(stream), WRITER_BUFFER_SIZE);
+    }
+
+    @Override
+    public void output(char[][] chars) {
+        long bytesBefore = stream.getCount();
+        lastFrameRuns = 0;
+        try {
+            boolean redraw = prevChars == null || prevChars.length != chars.length ||
+                             (chars.length > 0 && prevChars[0].length != chars[0].length);
+            if(redraw) {
+                writer.write(CLEAR_SCREEN);
+                prevChars = new char[chars.length][];
+            }
+            for(int y = 0 ; y < chars.length ; y++) {
+                if(redraw)
+                    writeRun(chars[y], y, 0, chars[y].length);
+                else
+                    writeChangedRuns(chars[y], prevChars[y], y);
+                prevChars[y] = chars[y].clone();
+            }
+            //leave the cursor below the picture
+            writer.write(String.format(CURSOR_POSITION_FORMAT, chars.length + 1, 1));
+            writer.flush();
+        } catch(IOException e) {
+            Logger.getGlobal().severe("Failed to write to the terminal");
+        }
+        lastFrameBytes = stream.getCount() - bytesBefore;
+    }
+
+    /**
+     * @return the number of bytes written for the last frame, escape sequences included
+     */
+    public long getLastFrameBytes() {
+        return lastFrameBytes;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return lastFrameBytes;
+    }
+
+    /**
+     * @return the number of bytes written for all the frames
+     */
+    public long getTotalBytes() {
+        return stream.getCount();
+    }
+
+    /**
+     * @return the number of runs of chars written for the last frame
+     */
+    public int getLastFrameRuns() {
+        return lastFrameRuns;
+    }
+
+    /**
+     * Forgets the last frame, so the next frame is drawn whole (after the screen was changed
+     * by something else, for example).
+     */
+    public void reset() {
+        prevChars = null;
+    }
+
+    /**
+     * Writes the runs of a row that differ from the same row of the last frame. Runs separated by
+     * only a few unchanged chars are written as one run, since the cursor move costs more.
+     */
+    private void writeChangedRuns(char[] row, char[] prevRow, int y) throws IOException {
+        int x = 0;
+        while(x < row.length) {
+            while(x < row.length && row[x] == prevRow[x])
+                x++;
+            if(x == row.length)
+                return;
+            int runEnd = x + 1, lastChanged = x;
+            while(runEnd < row.length && runEnd - lastChanged <= MIN_SKIPPED_CELLS) {
+                if(row[runEnd] != prevRow[runEnd])
+                    lastChanged = runEnd;
+                runEnd++;
+            }
+            writeRun(row, y, x, lastChanged + 1);
+            x = lastChanged + 1;
+        }
+    }
+
+    /**
+     * Moves the cursor to a cell and writes a run of chars from it.
+     */
+    private void writeRun(char[] row, int y, int from, int to) throws IOException {
+        writer.write(String.format(CURSOR_POSITION_FORMAT, y + 1, from * CELL_WIDTH + 1));
+        int length = (to - from) * CELL_WIDTH;
+        if(rowBuffer.length < length)
+            rowBuffer = new char[length];
+        int i = 0;
+        for(int x = from ; x < to ; x++) {
+            rowBuffer[i++] = row[x];
+            rowBuffer[i++] = SEPARATOR;
+        }
+        writer.write(rowBuffer, 0, length);
+        lastFrameRuns++;
+    }
+}
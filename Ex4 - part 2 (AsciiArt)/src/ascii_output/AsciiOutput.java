@@ -10,4 +10,11 @@ public interface AsciiOutput {
      * Output the specified 2D array of chars
      */
     void output(char[][] chars);
+
+    /**
+     * The number of bytes the last output wrote, or -1 if it isn't known
+     */
+    default long getBytesWritten() {
+        return -1;
+    }
 }
@@ -0,0 +1,14 @@
+package ascii_output;
+
+/**
+ * An object implementing this interface can also output a 2D array of chars
+ * with a color for every char.
+ */
+public interface ColorAsciiOutput extends AsciiOutput {
+    /**
+     * Output the specified 2D array of chars, each in its color
+     * @param chars the chars to output
+     * @param colors the packed RGB color of each char, by the same indices as chars
+     */
+    void output(char[][] chars, int[][] colors);
+}
@@ -0,0 +1,121 @@
+package ascii_output;
+
+/**
+ * A small set of colors that the colors of the tiles are reduced to before they are written.
+ * Fewer distinct colors mean longer runs of cells of one color, and every run is written as a single
+ * span or escape sequence.
+ * Finding the closest color of the palette is a lookup in a table indexed by the top 5 bits of each
+ * channel, filled when the palette is created.
+ */
+public class ColorPalette {
+    private static final int CHANNEL_BITS = 5;
+    private static final int CHANNEL_SHIFT = 8 - CHANNEL_BITS;
+    private static final int CHANNEL_LEVELS = 1 << CHANNEL_BITS;
+    private static final int[] CUBE_LEVELS = {0x00, 0x5f, 0x87, 0xaf, 0xd7, 0xff};
+    private static final int[] SYSTEM_COLORS = {
+            0x000000, 0x800000, 0x008000, 0x808000, 0x000080, 0x800080, 0x008080, 0xc0c0c0,
+            0x808080, 0xff0000, 0x00ff00, 0xffff00, 0x0000ff, 0xff00ff, 0x00ffff, 0xffffff};
+    private static final int FIRST_GREY = 0x08;
+    private static final int GREY_STEP = 10;
+    private static final int NUM_OF_GREYS = 24;
+
+    /**
+     * The 256 colors of xterm: the 16 system colors, a 6x6x6 color cube and 24 greys.
+     * The index of a color is its number in an ANSI 256-color escape sequence.
+     */
+    public static final ColorPalette ANSI_256 = new ColorPalette(ansi256Colors());
+
+    /**
+     * The 16 basic colors of HTML.
+     */
+    public static final ColorPalette HTML_16 = new ColorPalette(new int[] {
+            0x000000, 0xc0c0c0, 0x808080, 0xffffff, 0x800000, 0xff0000, 0x800080, 0xff00ff,
+            0x008000, 0x00ff00, 0x808000, 0xffff00, 0x000080, 0x0000ff, 0x008080, 0x00ffff});
+
+    private final int[] colors;
+    private final short[] closestColor = new short[CHANNEL_LEVELS * CHANNEL_LEVELS * CHANNEL_LEVELS];
+
+    private ColorPalette(int[] colors) {
+        this.colors = colors;
+        for(int r = 0 ; r < CHANNEL_LEVELS ; r++) {
+            for(int g = 0 ; g < CHANNEL_LEVELS ; g++) {
+                for(int b = 0 ; b < CHANNEL_LEVELS ; b++) {
+                    //the middle of the cell of colors that share the table entry
+                    int rgb = center(r) << 16 | center(g) << 8 | center(b);
+                    closestColor[(r << 2*CHANNEL_BITS) | (g << CHANNEL_BITS) | b] = (short)findClosest(rgb);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the color of the palette that is the closest to a color.
+     * @param rgb a packed RGB color (the alpha is ignored)
+     * @return the index of the closest color of the palette
+     */
+    public int quantize(int rgb) {
+        int r = (rgb >> 16 & 0xff) >> CHANNEL_SHIFT;
+        int g = (rgb >> 8 & 0xff) >> CHANNEL_SHIFT;
+        int b = (rgb & 0xff) >> CHANNEL_SHIFT;
+        return closestColor[(r << 2*CHANNEL_BITS) | (g << CHANNEL_BITS) | b];
+    }
+
+    /**
+     * @param index the index of a color of the palette
+     * @return the packed RGB value of the color
+     */
+    public int getRgb(int index) {
+        return colors[index];
+    }
+
+    /**
+     * @return the number of colors of the palette
+     */
+    public int size() {
+        return colors.length;
+    }
+
+    private int findClosest(int rgb) {
+        int closest = 0;
+        long minDistance = Long.MAX_VALUE;
+        for(int i = 0 ; i < colors.length ; i++) {
+            long distance = distance(rgb, colors[i]);
+            if(distance < minDistance) {
+                minDistance = distance;
+                closest = i;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * The squared distance between two colors, with the channels weighted by how sensitive the eye is
+     * to each of them.
+     */
+    private static long distance(int first, int second) {
+        int dr = (first >> 16 & 0xff) - (second >> 16 & 0xff);
+        int dg = (first >> 8 & 0xff) - (second >> 8 & 0xff);
+        int db = (first & 0xff) - (second & 0xff);
+        return 2L*dr*dr + 4L*dg*dg + 3L*db*db;
+    }
+
+    private static int center(int level) {
+        return (level << CHANNEL_SHIFT) | (1 << (CHANNEL_SHIFT - 1));
+    }
+
+    private static int[] ansi256Colors() {
+        int cubeSize = CUBE_LEVELS.length*CUBE_LEVELS.length*CUBE_LEVELS.length;
+        int[] colors = new int[SYSTEM_COLORS.length + cubeSize + NUM_OF_GREYS];
+        System.arraycopy(SYSTEM_COLORS, 0, colors, 0, SYSTEM_COLORS.length);
+        int i = SYSTEM_COLORS.length;
+        for(int r : CUBE_LEVELS)
+            for(int g : CUBE_LEVELS)
+                for(int b : CUBE_LEVELS)
+                    colors[i++] = r << 16 | g << 8 | b;
+        for(int grey = 0 ; grey < NUM_OF_GREYS ; grey++) {
+            int level = FIRST_GREY + grey*GREY_STEP;
+            colors[i++] = level << 16 | level << 8 | level;
+        }
+        return colors;
+    }
+}
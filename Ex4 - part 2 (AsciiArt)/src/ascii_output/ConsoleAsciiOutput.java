@@ -1,16 +1,149 @@
 package ascii_output;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
 /**
  * Output a 2D array of chars to the console.
+ * Each row is formatted into one reusable buffer and written whole through one buffered writer,
+ * which is kept between outputs, and the console is flushed once per output.
+ * Colored chars are reduced to the ANSI 256-color palette, and a color escape sequence is written
+ * only where the color changes.
  * @author Dan Nirel
- */public class ConsoleAsciiOutput implements AsciiOutput{
+ */public class ConsoleAsciiOutput implements ColorAsciiOutput{
+    private static final int WRITER_BUFFER_SIZE = 1 << 16;
+    private static final char SEPARATOR = ' ';
+    private static final String COLOR_FORMAT = "\033[38;5;%dm";
+    private static final String RESET_COLOR = "\033[0m";
+    private static final int MAX_COLOR_LENGTH = 11;
+    private static final String[] COLOR_ESCAPES = new String[ColorPalette.ANSI_256.size()];
+
+    static {
+        for (int color = 0; color < COLOR_ESCAPES.length; color++)
+            COLOR_ESCAPES[color] = String.format(COLOR_FORMAT, color);
+    }
+
+    private final OutputStream out;
+    private OutputStream target = null;
+    private CountingOutputStream stream = null;
+    private Writer writer = null;
+    private final char[] lineSeparator = System.lineSeparator().toCharArray();
+    private char[] rowBuffer = new char[0];
+    private long bytesWritten = -1;
+
+    /**
+     * Writes to the console.
+     */
+    public ConsoleAsciiOutput() {
+        this(null);
+    }
+
+    /**
+     * @param out the stream to write the chars to instead of the console, such as the body of an
+     *            HTTP response. The chars are encoded in UTF-8, and the stream is flushed after every
+     *            output but never closed.
+     */
+    public ConsoleAsciiOutput(OutputStream out) {
+        this.out = out;
+    }
+
     @Override
     public void output(char[][] chars) {
-        for (int y = 0; y < chars.length ; y++) {
-            for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+        output(chars, null);
+    }
+
+    @Override
+    public void output(char[][] chars, int[][] colors) {
+        Writer writer = getWriter();
+        long start = stream.getCount();
+        try {
+            for (int y = 0; y < chars.length ; y++) {
+                int length = colors == null ? formatRow(chars[y]) : formatColorRow(chars[y], colors[y]);
+                writer.write(rowBuffer, 0, length);
             }
-            System.out.println();
+            writer.flush();
+            bytesWritten = stream.getCount() - start;
+        } catch(IOException e) {
+            //whatever is left in the buffer is dropped with the writer
+            this.writer = null;
+            Logger.getGlobal().severe(out != null ? "Failed to write to the stream" :
+                                      "Failed to write to the console");
         }
     }
+
+    /**
+     * Returns the writer of the stream to write to, creating it on the first output.
+     * System.out is looked up on every output, and the writer is replaced if System.out was.
+     */
+    private Writer getWriter() {
+        OutputStream target = out != null ? out : System.out;
+        if (writer == null || target != this.target) {
+            this.target = target;
+            stream = new CountingOutputStream(target);
+            Charset charset = out != null ? StandardCharsets.UTF_8 : Charset.defaultCharset();
+            writer = new BufferedWriter(new OutputStreamWriter(stream, charset), WRITER_BUFFER_SIZE);
+        }
+        return writer;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Formats a row into the row buffer, growing the buffer if needed.
+     * @return the number of chars of the formatted row
+     */
+    private int formatRow(char[] row) {
+        int length = row.length * 2 + lineSeparator.length;
+        if (rowBuffer.length < length)
+            rowBuffer = new char[length];
+        int i = 0;
+        for (char c : row) {
+            rowBuffer[i++] = c;
+            rowBuffer[i++] = SEPARATOR;
+        }
+        System.arraycopy(lineSeparator, 0, rowBuffer, i, lineSeparator.length);
+        return length;
+    }
+
+    /**
+     * Formats a row of colored chars into the row buffer. Every run of chars of one color of the
+     * palette starts with a single escape sequence, and the color is reset at the end of the row.
+     * @return the number of chars of the formatted row
+     */
+    private int formatColorRow(char[] row, int[] colors) {
+        int maxLength = row.length * (2 + MAX_COLOR_LENGTH) + RESET_COLOR.length() + lineSeparator.length;
+        if (rowBuffer.length < maxLength)
+            rowBuffer = new char[maxLength];
+        int i = 0, prevColor = -1;
+        for (int x = 0; x < row.length; x++) {
+            int color = ColorPalette.ANSI_256.quantize(colors[x]);
+            if (color != prevColor) {
+                i = append(COLOR_ESCAPES[color], i);
+                prevColor = color;
+            }
+            rowBuffer[i++] = row[x];
+            rowBuffer[i++] = SEPARATOR;
+        }
+        i = append(RESET_COLOR, i);
+        System.arraycopy(lineSeparator, 0, rowBuffer, i, lineSeparator.length);
+        return i + lineSeparator.length;
+    }
+
+    /**
+     * Writes a string to the row buffer.
+     * @return the position after the written chars
+     */
+    private int append(String str, int position) {
+        str.getChars(0, str.length(), rowBuffer, position);
+        return position + str.length();
+    }
 }
@@ -0,0 +1,36 @@
+package ascii_output;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A package-private class of the package ascii_output.
+ * Counts the bytes that pass through it, so the outputs can tell how much they wrote.
+ */
+class CountingOutputStream extends FilterOutputStream {
+    private long count = 0;
+
+    CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    /**
+     * The number of bytes written so far.
+     */
+    long getCount() {
+        return count;
+    }
+}
@@ -1,29 +1,106 @@
 package ascii_output;
 
 import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * Rows are escaped into one reusable buffer and written whole. Optionally the file is gzipped,
+ * and runs of a repeated char are collapsed to a short tag that a small script expands
+ * when the page loads. Both are off by default; a collapsed page needs JavaScript, and without it
+ * every run shows as a single char.
+ * Colored chars are reduced to a palette, and every run of chars of one color is wrapped in a
+ * single span whose class sets the color. Chars in the page's own color (black) are not wrapped.
  * @author Dan Nirel
  */
-public class HtmlAsciiOutput implements AsciiOutput {
+public class HtmlAsciiOutput implements ColorAsciiOutput {
     private static final double BASE_LINE_SPACING = 0.8;
     private static final double BASE_FONT_SIZE = 150.0;
+    private static final int MIN_WRITER_BUFFER_SIZE = 1 << 13;
+    private static final int MAX_WRITER_BUFFER_SIZE = 1 << 20;
+    private static final int MAX_ESCAPED_CHAR_LENGTH = 5;
+    private static final int MIN_RUN_LENGTH = 16;
+    private static final String RUN_START = "<r n=";
+    private static final String RUN_END = "</r>";
+    private static final String RUN_SCRIPT =
+            "<script>for(const r of document.querySelectorAll('r'))" +
+            "r.replaceWith(r.textContent.repeat(r.getAttribute('n')))</script>\n";
+    private static final int TEXT_RGB = 0x000000;
+    private static final String SPAN_START = "<span class=c";
+    private static final String SPAN_END = "</span>";
+    private static final int MAX_SPAN_LENGTH = SPAN_START.length() + 4 + SPAN_END.length();
+    private static final String COLOR_CLASS_FORMAT = ".c%d{color:#%06x}";
 
     private final String fontName;
     private final String filename;
+    private final OutputStream out;
+    private final boolean gzip;
+    private final boolean collapseRuns;
+    private final ColorPalette palette;
+    private final char[] lineSeparator = System.lineSeparator().toCharArray();
+    private char[] rowBuffer = new char[0];
+    private int[] colorBuffer = new int[0];
+    private CountingOutputStream fileStream = null;
+    private long bytesWritten = -1;
 
     public HtmlAsciiOutput(String filename, String fontName) {
+        this(filename, fontName, false, false);
+    }
+
+    public HtmlAsciiOutput(String filename, String fontName, boolean gzip, boolean collapseRuns) {
+        this(filename, fontName, gzip, collapseRuns, ColorPalette.HTML_16);
+    }
+
+    /**
+     * @param filename     the file to write
+     * @param fontName     the font to show the chars in
+     * @param gzip         whether to gzip the file
+     * @param collapseRuns whether to collapse runs of a repeated char, which the page then needs
+     *                     JavaScript to show
+     * @param palette      the colors to reduce the colors of colored chars to
+     */
+    public HtmlAsciiOutput(String filename, String fontName, boolean gzip, boolean collapseRuns,
+                           ColorPalette palette) {
+        this(filename, null, fontName, gzip, collapseRuns, palette);
+    }
+
+    /**
+     * Writes the page to a stream instead of a file, such as the body of an HTTP response.
+     * The page is encoded in UTF-8, whatever the platform's default charset is.
+     * The stream is closed after the output, so only one page can be written to it.
+     * @param out      the stream to write the page to
+     * @param fontName the font to show the chars in
+     */
+    public HtmlAsciiOutput(OutputStream out, String fontName) {
+        this(null, out, fontName, false, false, ColorPalette.HTML_16);
+    }
+
+    private HtmlAsciiOutput(String filename, OutputStream out, String fontName, boolean gzip,
+                            boolean collapseRuns, ColorPalette palette) {
         this.fontName = fontName;
         this.filename = filename;
+        this.out = out;
+        this.gzip = gzip;
+        this.collapseRuns = collapseRuns;
+        this.palette = palette;
     }
 
     @Override
     public void output(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
+        output(chars, null);
+    }
+
+    @Override
+    public void output(char[][] chars, int[][] colors) {
+        try(Writer writer = openWriter(chars)) {
             writer.write(String.format(
                 "<!DOCTYPE html>\n"+
                 "<html>\n"+
@@ -31,33 +108,164 @@ public class HtmlAsciiOutput implements AsciiOutput {
                     "\tCOLOR:#000000;"+
                     "\tTEXT-ALIGN:center;"+
                     "\tFONT-SIZE:1px;\">\n"+
+                "%s"+
                 "<p style=\""+
                     "\twhite-space:pre;"+
                     "\tFONT-FAMILY:%s;"+
                     "\tFONT-SIZE:%frem;"+
                     "\tLETTER-SPACING:0.15em;"+
                     "\tLINE-HEIGHT:%fem;\">\n",
+                    colors == null ? "" : colorClasses(colors),
                     fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
 
             for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
-                    }
-                    writer.write(htmlRep);
-                }
-                writer.newLine();
+                int length = encodeRow(chars[y], colors == null ? null : colors[y]);
+                writer.write(rowBuffer, 0, length);
             }
             writer.write(
                 "</p>\n"+
+                (collapseRuns ? RUN_SCRIPT : "")+
                 "</body>\n"+
                 "</html>\n");
         } catch(IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            bytesWritten = -1;
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"",
+                                                    filename == null ? "the stream" : filename));
+            return;
         }
+        //counted after closing, which writes the last of the buffered and gzipped bytes
+        bytesWritten = fileStream.getCount();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Opens the file for writing, with a buffer sized by the amount of chars to write.
+     */
+    private Writer openWriter(char[][] chars) throws IOException {
+        long estimatedSize = (long)chars.length * (chars[0].length + lineSeparator.length);
+        int bufferSize = (int)Math.max(MIN_WRITER_BUFFER_SIZE,
+                                       Math.min(MAX_WRITER_BUFFER_SIZE, estimatedSize));
+        fileStream = new CountingOutputStream(out != null ? out : new FileOutputStream(filename));
+        OutputStream stream = fileStream;
+        try {
+            if(gzip)
+                stream = new GZIPOutputStream(stream, bufferSize);
+        } catch(IOException e) {
+            stream.close();
+            throw e;
+        }
+        Charset charset = out != null ? StandardCharsets.UTF_8 : Charset.defaultCharset();
+        return new BufferedWriter(new OutputStreamWriter(stream, charset), bufferSize);
+    }
+
+    /**
+     * A style element with a class for every color of the palette that the chars use.
+     */
+    private String colorClasses(int[][] colors) {
+        boolean[] used = new boolean[palette.size()];
+        for(int[] row : colors) {
+            for(int rgb : row)
+                used[palette.quantize(rgb)] = true;
+        }
+        StringBuilder style = new StringBuilder("<style>");
+        for(int color = 0 ; color < used.length ; color++) {
+            if(used[color] && palette.getRgb(color) != TEXT_RGB)
+                style.append(String.format(COLOR_CLASS_FORMAT, color, palette.getRgb(color)));
+        }
+        return style.append("</style>\n").toString();
+    }
+
+    /**
+     * Escapes a row, and collapses its runs if asked to, into the row buffer.
+     * If the row has colors, each run of chars of one color of the palette is wrapped in a span.
+     * @param colors the colors of the row's chars, or null
+     * @return the number of chars of the encoded row
+     */
+    private int encodeRow(char[] row, int[] colors) {
+        int maxCellLength = MAX_ESCAPED_CHAR_LENGTH + (colors == null ? 0 : MAX_SPAN_LENGTH);
+        int maxLength = row.length * maxCellLength + lineSeparator.length;
+        if(rowBuffer.length < maxLength)
+            rowBuffer = new char[maxLength];
+        if(colors == null) {
+            int length = encodeChars(row, 0, row.length, 0);
+            System.arraycopy(lineSeparator, 0, rowBuffer, length, lineSeparator.length);
+            return length + lineSeparator.length;
+        }
+        if(colorBuffer.length < row.length)
+            colorBuffer = new int[row.length];
+        for(int x = 0 ; x < row.length ; x++)
+            colorBuffer[x] = palette.quantize(colors[x]);
+        int length = 0;
+        for(int x = 0 ; x < row.length ; ) {
+            int color = colorBuffer[x], colorEnd = x + 1;
+            while(colorEnd < row.length && colorBuffer[colorEnd] == color)
+                colorEnd++;
+            boolean span = palette.getRgb(color) != TEXT_RGB;
+            if(span) {
+                length = append(SPAN_START, length);
+                length = append(Integer.toString(color), length);
+                rowBuffer[length++] = '>';
+            }
+            length = encodeChars(row, x, colorEnd, length);
+            if(span)
+                length = append(SPAN_END, length);
+            x = colorEnd;
+        }
+        System.arraycopy(lineSeparator, 0, rowBuffer, length, lineSeparator.length);
+        return length + lineSeparator.length;
+    }
+
+    /**
+     * Escapes a span of a row, and collapses its runs if asked to, into the row buffer.
+     * @return the position after the written chars
+     */
+    private int encodeChars(char[] row, int from, int to, int length) {
+        for(int x = from ; x < to ; ) {
+            int runEnd = x + 1;
+            if(collapseRuns) {
+                while(runEnd < to && row[runEnd] == row[x])
+                    runEnd++;
+            }
+            if(runEnd - x >= MIN_RUN_LENGTH) {
+                length = append(RUN_START, length);
+                length = append(Integer.toString(runEnd - x), length);
+                rowBuffer[length++] = '>';
+                length = appendEscaped(row[x], length);
+                length = append(RUN_END, length);
+            } else {
+                for(int i = x ; i < runEnd ; i++)
+                    length = appendEscaped(row[i], length);
+            }
+            x = runEnd;
+        }
+        return length;
+    }
+
+    /**
+     * Writes a char to the row buffer, escaped for HTML.
+     * @return the position after the written chars
+     */
+    private int appendEscaped(char c, int position) {
+        switch(c) {
+            case '<': return append("&lt;", position);
+            case '>': return append("&gt;", position);
+            case '&': return append("&amp;", position);
+            default:
+                rowBuffer[position] = c;
+                return position + 1;
+        }
+    }
+
+    /**
+     * Writes a string to the row buffer.
+     * @return the position after the written chars
+     */
+    private int append(String str, int position) {
+        str.getChars(0, str.length(), rowBuffer, position);
+        return position + str.length();
     }
 }
@@ -1,62 +1,147 @@
 package image;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
 
 /**
  * A package-private class of the package image.
+ * The padded picture is kept as packed ARGB ints, one per pixel, row after row.
  * @author Dan Nirel
  */
 class FileImage implements Image {
     private static final Color DEFAULT_COLOR = Color.WHITE;
+    private static final int OPAQUE_ALPHA = 0xff000000;
 
-    private final Color[][] pixelArray;
+    private final int[] pixelArray;
+    private final int width;
+    private final int height;
 
     public FileImage(String filename) throws IOException {
-        java.awt.image.BufferedImage im = ImageIO.read(new File(filename));
+        this(read(filename));
+    }
+
+    /**
+     * Reads a picture, padded or at its own dimensions.
+     */
+    FileImage(String filename, boolean pad) throws IOException {
+        this(read(filename), pad);
+    }
+
+    /**
+     * Pads a decoded picture, such as a frame of an animation.
+     */
+    FileImage(java.awt.image.BufferedImage im) {
+        this(im, true);
+    }
+
+    /**
+     * Keeps a decoded picture.
+     * @param pad whether to pad the picture to powers of 2, or to keep its own dimensions
+     */
+    FileImage(java.awt.image.BufferedImage im, boolean pad) {
         int origWidth = im.getWidth(), origHeight = im.getHeight();
 
-        int newWidth = getPowerOfTwoGreaterThan(origWidth);
-        int newHeight = getPowerOfTwoGreaterThan(origHeight);
-
-        pixelArray = new Color[newHeight][newWidth];
-        float xMargin = (newWidth-origWidth)/2.0f;
-        float yMargin = (newHeight-origHeight)/2.0f;
-
-        for(int y = 0 ; y < pixelArray.length ; y++) {
-            for(int x = 0 ; x < pixelArray[y].length ; x++) {
-                //if this pixel is not in the margins, take value from image
-                if(x >= (int)Math.floor(xMargin) && x < pixelArray[y].length-Math.ceil(xMargin) &&
-                   y >= (int)Math.floor(yMargin) && y < pixelArray.length-Math.ceil(yMargin)) {
-                pixelArray[y][x] = new Color(im.getRGB(
-                        x-(int)Math.floor(xMargin),
-                        y-(int)Math.floor(yMargin)));
-                }
-                else { //otherwise, color with default background color
-                    pixelArray[y][x] = DEFAULT_COLOR;
-                }
+        width = pad ? getPowerOfTwoGreaterThan(origWidth) : origWidth;
+        height = pad ? getPowerOfTwoGreaterThan(origHeight) : origHeight;
+
+        pixelArray = new int[width * height];
+        Arrays.fill(pixelArray, DEFAULT_COLOR.getRGB());
+        int xMargin = (int)Math.floor((width-origWidth)/2.0f);
+        int yMargin = (int)Math.floor((height-origHeight)/2.0f);
+
+        //copy the image into the middle of the padded array, leaving the margins in the default color
+        im.getRGB(0, 0, origWidth, origHeight, pixelArray, yMargin*width + xMargin, width);
+        for(int y = yMargin ; y < yMargin+origHeight ; y++) {
+            for(int x = xMargin ; x < xMargin+origWidth ; x++) {
+                pixelArray[y*width + x] |= OPAQUE_ALPHA; //same as new Color(rgb), which ignores alpha
+            }
+        }
+    }
+
+    /**
+     * Decodes a picture from the bytes of an image file.
+     * @param pad whether to pad the picture to powers of 2, or to keep its own dimensions
+     */
+    static FileImage fromBytes(byte[] data, boolean pad) throws IOException {
+        java.awt.image.BufferedImage im = ImageIO.read(new ByteArrayInputStream(data));
+        if(im == null)
+            throw new IOException("Unsupported image format");
+        return new FileImage(im, pad);
+    }
+
+    /**
+     * Reads the dimensions of a picture from the header of an image file, without decoding its pixels.
+     * @return the width and height of the picture, before padding
+     */
+    static Dimension readSize(byte[] data) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data));
+        if(input == null)
+            throw new IOException("Unsupported image format");
+        try(input) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if(!readers.hasNext())
+                throw new IOException("Unsupported image format");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
             }
         }
     }
 
+    private static java.awt.image.BufferedImage read(String filename) throws IOException {
+        java.awt.image.BufferedImage im = ImageIO.read(new File(filename));
+        if(im == null)
+            throw new IOException("Unsupported image format: " + filename);
+        return im;
+    }
+
     @Override
     public int getWidth() {
-        return pixelArray[0].length;
+        return width;
     }
 
     @Override
     public int getHeight() {
-        return pixelArray.length;
+        return height;
     }
 
     @Override
     public Color getPixel(int x, int y) {
-        return pixelArray[y][x]; //if invalid indices, let the array throw the exception
+        return new Color(getPixelRgb(x, y));
+    }
+
+    @Override
+    public int getPixelRgb(int x, int y) {
+        if(x < 0 || y < 0 || x >= width || y >= height)
+            throw new IndexOutOfBoundsException();
+        return pixelArray[y*width + x];
+    }
+
+    @Override
+    public void getRowRgb(int x, int y, int length, int[] dst, int dstOffset) {
+        if(x < 0 || y < 0 || length < 0 || x+length > width || y >= height)
+            throw new IndexOutOfBoundsException();
+        System.arraycopy(pixelArray, y*width + x, dst, dstOffset, length);
+    }
+
+    /**
+     * The packed pixels themselves, row after row, for classes of the package that store them elsewhere.
+     */
+    int[] getPixelArray() {
+        return pixelArray;
     }
 
-    private static int getPowerOfTwoGreaterThan(int num) {
+    static int getPowerOfTwoGreaterThan(int num) {
         return (int)Math.pow(2, Math.ceil(Math.log(num)/Math.log(2)));
     }
 }
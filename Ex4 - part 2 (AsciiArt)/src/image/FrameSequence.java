@@ -0,0 +1,264 @@
+package image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Logger;
+
+/**
+ * The frames of an animation, decoded one at a time as they are iterated, so a long clip is never held in
+ * memory. The frames are read from an animated image (like a GIF) through ImageIO, or from a directory of
+ * numbered frame files; files of the directory that aren't images are skipped. Every frame is padded
+ * like the image of Image.fromFile, so all the frames of a sequence have the same dimensions, each a
+ * power of 2, unless the sequence was opened unpadded. The frames of a GIF also tell the region that
+ * changed since the frame before them.
+ * Decoding a frame may throw an UncheckedIOException if the file can't be read anymore.
+ * @see Image#framesFromFile(String)
+ */
+public class FrameSequence implements Iterator<Image>, Closeable {
+    private static final String GIF_STREAM_FORMAT = "javax_imageio_gif_stream_1.0";
+    private static final String GIF_IMAGE_FORMAT = "javax_imageio_gif_image_1.0";
+    private static final String RESTORE_TO_BACKGROUND = "restoreToBackgroundColor";
+    private static final String RESTORE_TO_PREVIOUS = "restoreToPrevious";
+    private static final Color BACKGROUND_COLOR = Color.WHITE;
+
+    private final File[] frameFiles;
+    private final ImageReader reader;
+    private final boolean pad;
+    private BufferedImage canvas;
+    private int nextFrameIndex = 0;
+    private int nextFileIndex = 0;
+    private Image nextFrame = null;
+    private boolean ended = false;
+    //the region of the canvas that the disposal of the last composed frame changed, if any
+    private Rectangle disposedRegion = null;
+    //the changed region of the last frame read, of the frame waiting to be returned and of the last returned
+    private Rectangle readRegion = null;
+    private Rectangle nextRegion = null;
+    private Rectangle changedRegion = null;
+
+    private FrameSequence(File[] frameFiles, ImageReader reader, boolean pad) {
+        this.frameFiles = frameFiles;
+        this.reader = reader;
+        this.pad = pad;
+    }
+
+    /**
+     * Opens the frames of an animated image file, or of a directory whose files are the frames.
+     * The files of a directory are ordered by the number in their names (frame2 before frame10).
+     * @param pad whether to pad the frames to powers of 2, or to keep their own dimensions
+     */
+    static FrameSequence open(String path, boolean pad) throws IOException {
+        File file = new File(path);
+        if(file.isDirectory()) {
+            File[] frameFiles = file.listFiles(File::isFile);
+            if(frameFiles == null)
+                throw new IOException("Cannot list " + path);
+            Arrays.sort(frameFiles, Comparator.comparingLong(FrameSequence::frameNumber)
+                                              .thenComparing(File::getName));
+            return new FrameSequence(frameFiles, null, pad);
+        }
+        ImageInputStream input = ImageIO.createImageInputStream(file);
+        if(input == null)
+            throw new IOException("Cannot open " + path);
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if(!readers.hasNext()) {
+            input.close();
+            throw new IOException("Unsupported image format: " + path);
+        }
+        ImageReader reader = readers.next();
+        //the frames are read in order, so the stream doesn't have to be kept for seeking backwards
+        reader.setInput(input, true, false);
+        return new FrameSequence(null, reader, pad);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(nextFrame == null && !ended) {
+            try {
+                nextFrame = readFrame(nextFrameIndex);
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if(nextFrame == null) {
+                ended = true;
+            } else {
+                nextFrameIndex++;
+                nextRegion = readRegion;
+            }
+        }
+        return nextFrame != null;
+    }
+
+    @Override
+    public Image next() {
+        if(!hasNext())
+            throw new NoSuchElementException();
+        Image frame = nextFrame;
+        nextFrame = null;
+        changedRegion = nextRegion;
+        return frame;
+    }
+
+    /**
+     * The pixels of the frame last returned by next that may differ from the frame before it.
+     * @return the region, in the coordinates of the (padded) frame, or null if any pixel may have changed
+     * (as for the first frame, and the frames of a directory)
+     */
+    public Rectangle getChangedRegion() {
+        return changedRegion == null ? null : new Rectangle(changedRegion);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(reader == null)
+            return;
+        Object input = reader.getInput();
+        reader.dispose();
+        if(input instanceof ImageInputStream)
+            ((ImageInputStream)input).close();
+    }
+
+    /**
+     * Decodes a frame.
+     * @return the frame, or null after the last frame
+     */
+    private Image readFrame(int index) throws IOException {
+        readRegion = null;
+        if(frameFiles != null) {
+            while(nextFileIndex < frameFiles.length) {
+                File file = frameFiles[nextFileIndex++];
+                try {
+                    return new FileImage(file.getPath(), pad);
+                } catch(IOException e) {
+                    Logger.getGlobal().warning("Skipping " + file + ", which is not an image");
+                }
+            }
+            return null;
+        }
+        BufferedImage frame;
+        try {
+            frame = reader.read(index);
+        } catch(IndexOutOfBoundsException e) {
+            return null;
+        }
+        if(!isGif())
+            return new FileImage(frame, pad);
+        return composeGifFrame(index, frame);
+    }
+
+    private boolean isGif() {
+        return GIF_IMAGE_FORMAT.equals(reader.getOriginatingProvider().getNativeImageMetadataFormatName());
+    }
+
+    /**
+     * A frame of a GIF may cover only part of the picture, and is drawn over what the previous frames
+     * left, so the frames are drawn on one canvas the size of the whole picture.
+     * Only the frame's own rectangle, and the rectangle of the previous frame if its disposal changed
+     * the canvas, can differ from the picture before it.
+     * @return the picture after drawing the frame
+     */
+    private Image composeGifFrame(int index, BufferedImage frame) throws IOException {
+        boolean firstFrame = canvas == null;
+        if(firstFrame)
+            canvas = newCanvas(frame);
+        IIOMetadataNode metadata = (IIOMetadataNode)reader.getImageMetadata(index)
+                                                          .getAsTree(GIF_IMAGE_FORMAT);
+        IIOMetadataNode descriptor = child(metadata, "ImageDescriptor");
+        IIOMetadataNode control = child(metadata, "GraphicControlExtension");
+        int left = descriptor == null ? 0 : Integer.parseInt(descriptor.getAttribute("imageLeftPosition"));
+        int top = descriptor == null ? 0 : Integer.parseInt(descriptor.getAttribute("imageTopPosition"));
+        String disposal = control == null ? "" : control.getAttribute("disposalMethod");
+
+        BufferedImage previous = null;
+        if(RESTORE_TO_PREVIOUS.equals(disposal))
+            previous = copy(canvas);
+        Graphics2D graphics = canvas.createGraphics();
+        graphics.drawImage(frame, left, top, null);
+        graphics.dispose();
+        //the pixels are copied here, before the canvas is changed for the next frame
+        Image composed = new FileImage(canvas, pad);
+        Rectangle frameRegion = new Rectangle(left, top, frame.getWidth(), frame.getHeight());
+        if(!firstFrame) {
+            Rectangle region = disposedRegion == null ? new Rectangle(frameRegion) :
+                               frameRegion.union(disposedRegion);
+            //the canvas is in the middle of the padded frame, as in FileImage
+            region.translate((composed.getWidth()-canvas.getWidth())/2,
+                             (composed.getHeight()-canvas.getHeight())/2);
+            readRegion = region;
+        }
+        disposedRegion = previous != null || RESTORE_TO_BACKGROUND.equals(disposal) ? frameRegion : null;
+
+        //get the canvas ready for the next frame, as this frame asks
+        if(previous != null) {
+            canvas = previous;
+        } else if(RESTORE_TO_BACKGROUND.equals(disposal)) {
+            graphics = canvas.createGraphics();
+            graphics.setColor(BACKGROUND_COLOR);
+            graphics.fillRect(left, top, frame.getWidth(), frame.getHeight());
+            graphics.dispose();
+        }
+        return composed;
+    }
+
+    /**
+     * Creates a canvas in the background color, the size of the GIF's logical screen
+     * (or of its first frame, if the screen size is missing).
+     */
+    private BufferedImage newCanvas(BufferedImage firstFrame) throws IOException {
+        int canvasWidth = firstFrame.getWidth(), canvasHeight = firstFrame.getHeight();
+        IIOMetadata streamMetadata = reader.getStreamMetadata();
+        if(streamMetadata != null) {
+            IIOMetadataNode screen = child((IIOMetadataNode)streamMetadata.getAsTree(GIF_STREAM_FORMAT),
+                                           "LogicalScreenDescriptor");
+            if(screen != null) {
+                canvasWidth = Math.max(canvasWidth,
+                                       Integer.parseInt(screen.getAttribute("logicalScreenWidth")));
+                canvasHeight = Math.max(canvasHeight,
+                                        Integer.parseInt(screen.getAttribute("logicalScreenHeight")));
+            }
+        }
+        BufferedImage newCanvas = new BufferedImage(canvasWidth, canvasHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = newCanvas.createGraphics();
+        graphics.setColor(BACKGROUND_COLOR);
+        graphics.fillRect(0, 0, canvasWidth, canvasHeight);
+        graphics.dispose();
+        return newCanvas;
+    }
+
+    private static BufferedImage copy(BufferedImage im) {
+        BufferedImage copy = new BufferedImage(im.getWidth(), im.getHeight(), im.getType());
+        copy.setData(im.getRaster());
+        return copy;
+    }
+
+    private static IIOMetadataNode child(IIOMetadataNode node, String name) {
+        for(int i = 0 ; i < node.getLength() ; i++) {
+            if(node.item(i).getNodeName().equals(name))
+                return (IIOMetadataNode)node.item(i);
+        }
+        return null;
+    }
+
+    /**
+     * The last number in the name of a frame file, or -1 if there is none.
+     */
+    private static long frameNumber(File file) {
+        String digits = file.getName().replaceAll("^.*?(\\d+)\\D*$", "$1");
+        if(digits.isEmpty() || !Character.isDigit(digits.charAt(0)) || digits.length() > 18)
+            return -1;
+        return Long.parseLong(digits);
+    }
+}
@@ -12,21 +12,171 @@ public interface Image {
     int getWidth();
     int getHeight();
 
+    /**
+     * Returns the color of a pixel as a packed ARGB int (the same value as getPixel(x, y).getRGB()),
+     * without allocating a Color object.
+     * @param x the column of the pixel
+     * @param y the row of the pixel
+     * @return the packed ARGB value of the pixel
+     */
+    default int getPixelRgb(int x, int y) {
+        return getPixel(x, y).getRGB();
+    }
+
+    /**
+     * Copies a span of a row of pixels, as packed ARGB ints, to an array.
+     * @param x the column of the first pixel of the span
+     * @param y the row of the span
+     * @param length the number of pixels in the span
+     * @param dst the array to copy the pixels to
+     * @param dstOffset the index in dst of the first pixel
+     */
+    default void getRowRgb(int x, int y, int length, int[] dst, int dstOffset) {
+        for(int i = 0 ; i < length ; i++)
+            dst[dstOffset+i] = getPixelRgb(x+i, y);
+    }
+
+    /**
+     * Passes every pixel, by order (first row, second row and so on), to a consumer,
+     * without allocating an object per pixel.
+     * @param consumer receives the coordinates and the packed ARGB value of each pixel
+     */
+    default void forEachPixelRgb(IntPixelConsumer consumer) {
+        int[] row = new int[getWidth()];
+        for(int y = 0 ; y < getHeight() ; y++) {
+            getRowRgb(0, y, row.length, row, 0);
+            for(int x = 0 ; x < row.length ; x++)
+                consumer.accept(x, y, row[x]);
+        }
+    }
+
     /**
      * Open an image from file. Each dimensions of the returned image is guaranteed
      * to be a power of 2, but the dimensions may be different.
+     * If the "image.pixelCache" system property is true, the padded pixels are also cached in a
+     * memory-mapped file next to the image, and later calls map that file instead of decoding the image.
      * @param filename a path to an image file on disk
      * @return an object implementing Image if the operation was successful,
      * null otherwise
      */
     static Image fromFile(String filename) {
         try {
+            if(MappedFileImage.isEnabled())
+                return MappedFileImage.open(filename);
             return new FileImage(filename);
         } catch(IOException ioe) {
             return null;
         }
     }
 
+    /**
+     * Decode an image from the bytes of an image file, such as an upload, padded as in fromFile.
+     * @param data the contents of an image file
+     * @return an object implementing Image if the operation was successful,
+     * null otherwise
+     */
+    static Image fromBytes(byte[] data) {
+        try {
+            return FileImage.fromBytes(data, true);
+        } catch(IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Decode an image from the bytes of an image file at its own dimensions, as in fromFileUnpadded.
+     * @param data the contents of an image file
+     * @return an object implementing Image if the operation was successful,
+     * null otherwise
+     */
+    static Image fromBytesUnpadded(byte[] data) {
+        try {
+            return FileImage.fromBytes(data, false);
+        } catch(IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the dimensions of an image from the header of an image file, without decoding
+     * its pixels, so an upload can be rejected before it is decoded whole.
+     * @param data the contents of an image file
+     * @return the width and height of the image before it is padded, or null if the
+     * format isn't supported
+     */
+    static Dimension sizeOfBytes(byte[] data) {
+        try {
+            return FileImage.readSize(data);
+        } catch(IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Open an image from file at its own dimensions, without padding it. The tiles of such an
+     * image are cut from the picture itself, and they may differ in size by a pixel where the
+     * dimensions don't divide evenly.
+     * @param filename a path to an image file on disk
+     * @return an object implementing Image if the operation was successful,
+     * null otherwise
+     */
+    static Image fromFileUnpadded(String filename) {
+        try {
+            return new FileImage(filename, false);
+        } catch(IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Open a large image from file without decoding it whole. The pixels are decoded
+     * in strips of rows when they are first accessed, and only a few strips are kept in memory.
+     * Each dimension of the returned image is guaranteed to be a power of 2, as in fromFile.
+     * Accessing a pixel may throw an UncheckedIOException if the file can't be read anymore.
+     * The returned image keeps the file open and should be closed when done.
+     * @param filename a path to an image file on disk
+     * @param subsampling keep only every subsampling-th pixel of every subsampling-th row
+     * (1 keeps all of them)
+     * @return the image if the operation was successful, null otherwise
+     */
+    static StreamingFileImage fromFileStreaming(String filename, int subsampling) {
+        try {
+            return new StreamingFileImage(filename, subsampling);
+        } catch(IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Open the frames of an animation: an animated image file (like a GIF), or a directory
+     * of frame files ordered by the numbers in their names. The frames are decoded one at
+     * a time while they are iterated, and each is padded as in fromFile.
+     * The returned sequence should be closed when done.
+     * @param path a path to an animated image file, or to a directory of frames
+     * @return the frames if the file was opened successfully, null otherwise
+     */
+    static FrameSequence framesFromFile(String path) {
+        try {
+            return FrameSequence.open(path, true);
+        } catch(IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Open the frames of an animation as in framesFromFile, keeping each frame at its own
+     * dimensions, as in fromFileUnpadded.
+     * @param path a path to an animated image file, or to a directory of frames
+     * @return the frames if the file was opened successfully, null otherwise
+     */
+    static FrameSequence framesFromFileUnpadded(String path) {
+        try {
+            return FrameSequence.open(path, false);
+        } catch(IOException ioe) {
+            return null;
+        }
+    }
+
     /**
      * Allows iterating the pixels' colors by order (first row, second row and so on).
      * @return an Iterable<Color> that can be traversed with a foreach loop
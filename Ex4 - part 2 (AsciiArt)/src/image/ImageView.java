@@ -48,6 +48,20 @@ class ImageView implements Image {
         return img.getPixel(startX+x, startY+y);
     }
 
+    @Override
+    public int getPixelRgb(int x, int y) {
+        if(x < 0 || y < 0 || x >= getWidth() || y >= getHeight())
+            throw new IndexOutOfBoundsException();
+        return img.getPixelRgb(startX+x, startY+y);
+    }
+
+    @Override
+    public void getRowRgb(int x, int y, int length, int[] dst, int dstOffset) {
+        if(x < 0 || y < 0 || length < 0 || x+length > getWidth() || y >= getHeight())
+            throw new IndexOutOfBoundsException();
+        img.getRowRgb(startX+x, startY+y, length, dst, dstOffset);
+    }
+
     @Override
     public int getWidth() {
         return width;
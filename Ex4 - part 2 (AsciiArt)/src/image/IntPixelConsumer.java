@@ -0,0 +1,16 @@
+package image;
+
+/**
+ * Receives the pixels of an image one by one, as packed ARGB ints, without boxing them.
+ * @see Image#forEachPixelRgb(IntPixelConsumer)
+ */
+@FunctionalInterface
+public interface IntPixelConsumer {
+    /**
+     * Receives one pixel.
+     * @param x the column of the pixel
+     * @param y the row of the pixel
+     * @param rgb the packed ARGB value of the pixel
+     */
+    void accept(int x, int y, int rgb);
+}
@@ -0,0 +1,162 @@
+package image;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A package-private class of the package image.
+ * An image whose padded pixels are read from a memory-mapped cache file kept next to the source image,
+ * so opening the same picture again costs no decoding and no copying.
+ * The cache file is named after the source and starts with a header holding the source's
+ * modification time and size; if they don't match the source anymore the cache is rebuilt.
+ * The cache files are kept in a subdirectory of the source's directory, so listing the files of
+ * a directory of images (as the batch mode and the frames of an animation do) doesn't list them.
+ */
+class MappedFileImage implements Image {
+    private static final String CACHE_DIRECTORY = ".pixelcache";
+    private static final String CACHE_SUFFIX = ".pixels";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x41415058; //"AAPX"
+    private static final int HEADER_BYTES = 4 + 8 + 8 + 4 + 4;
+    private static final long MAX_PIXELS = (Integer.MAX_VALUE - HEADER_BYTES) / Integer.BYTES;
+    private static final String ENABLED_PROPERTY = "image.pixelCache";
+
+    private final IntBuffer pixelBuffer;
+    private final int width;
+    private final int height;
+
+    private MappedFileImage(IntBuffer pixelBuffer, int width, int height) {
+        this.pixelBuffer = pixelBuffer;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Whether Image.fromFile should open images through their pixel cache, as set by the
+     * "image.pixelCache" system property.
+     */
+    static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROPERTY);
+    }
+
+    /**
+     * Opens an image through its pixel cache: maps the cache file if it is up to date, otherwise decodes
+     * the image and writes the cache file for next time. If the cache can't be written
+     * (a read-only directory, for example) the decoded image is returned as is.
+     * @param filename a path to an image file on disk
+     * @return the opened image
+     * @throws IOException if the image can't be decoded
+     */
+    static Image open(String filename) throws IOException {
+        File source = new File(filename);
+        long modified = source.lastModified(), size = source.length();
+        Path cache = source.getAbsoluteFile().toPath().resolveSibling(CACHE_DIRECTORY)
+                           .resolve(source.getName() + CACHE_SUFFIX);
+        try {
+            Image cached = map(cache, modified, size);
+            if(cached != null)
+                return cached;
+        } catch(IOException ioe) {
+            //an unreadable cache is treated as a missing one
+        }
+        FileImage decoded = new FileImage(filename);
+        if((long)decoded.getWidth() * decoded.getHeight() > MAX_PIXELS)
+            return decoded;
+        try {
+            write(cache, decoded, modified, size);
+            Image cached = map(cache, modified, size);
+            return cached != null ? cached : decoded;
+        } catch(IOException ioe) {
+            return decoded;
+        }
+    }
+
+    /**
+     * Maps a cache file, if it exists and belongs to the given version of the source.
+     * @return the mapped image, or null if the cache is missing or stale
+     */
+    private static Image map(Path cache, long modified, long size) throws IOException {
+        if(!Files.isRegularFile(cache))
+            return null;
+        try(FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            if(channel.size() < HEADER_BYTES)
+                return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.nativeOrder());
+            if(buffer.getInt() != MAGIC || buffer.getLong() != modified || buffer.getLong() != size)
+                return null;
+            int width = buffer.getInt(), height = buffer.getInt();
+            if(width <= 0 || height <= 0 || channel.size() != HEADER_BYTES + 4L * width * height)
+                return null;
+            //the mapping stays valid after the channel is closed
+            return new MappedFileImage(buffer.slice().order(ByteOrder.nativeOrder()).asIntBuffer(),
+                    width, height);
+        }
+    }
+
+    /**
+     * Writes the pixels of a decoded image to a cache file. The file is written under a temporary name
+     * and then moved into place, so a reader never maps a half-written cache.
+     */
+    private static void write(Path cache, FileImage decoded, long modified, long size) throws IOException {
+        int[] pixels = decoded.getPixelArray();
+        Files.createDirectories(cache.getParent());
+        Path temp = Files.createTempFile(cache.toAbsolutePath().getParent(),
+                cache.getFileName().toString(), TEMP_SUFFIX);
+        try {
+            try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        HEADER_BYTES + 4L * pixels.length);
+                buffer.order(ByteOrder.nativeOrder());
+                buffer.putInt(MAGIC).putLong(modified).putLong(size)
+                      .putInt(decoded.getWidth()).putInt(decoded.getHeight());
+                ByteBuffer body = buffer.slice().order(ByteOrder.nativeOrder());
+                body.asIntBuffer().put(pixels);
+                buffer.force();
+            }
+            Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getPixelRgb(x, y));
+    }
+
+    @Override
+    public int getPixelRgb(int x, int y) {
+        if(x < 0 || y < 0 || x >= width || y >= height)
+            throw new IndexOutOfBoundsException();
+        return pixelBuffer.get(y*width + x);
+    }
+
+    @Override
+    public void getRowRgb(int x, int y, int length, int[] dst, int dstOffset) {
+        if(x < 0 || y < 0 || length < 0 || x+length > width || y >= height)
+            throw new IndexOutOfBoundsException();
+        pixelBuffer.get(y*width + x, dst, dstOffset, length);
+    }
+}
@@ -0,0 +1,205 @@
+package image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Like FileImage, but never holds the whole picture in memory: the picture is decoded in strips of rows,
+ * on demand, with ImageReadParam.setSourceRegion, and only the last few strips are kept.
+ * The picture can also be subsampled while it is decoded.
+ * Formats that store their rows in independent tiles (like tiled TIFF) decode a strip directly; other
+ * formats may have to decode the rows above the strip again, so reading the rows in order is cheapest.
+ * The image keeps its file open until it is closed.
+ * @see Image#fromFileStreaming(String, int)
+ */
+public class StreamingFileImage implements Image, Closeable {
+    private static final int DEFAULT_RGB = Color.WHITE.getRGB();
+    private static final int OPAQUE_ALPHA = 0xff000000;
+    private static final int STRIP_HEIGHT = 256;
+    private static final int MAX_CACHED_STRIPS = 4;
+
+    private final ImageReader reader;
+    private final int subsampling;
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int origWidth;
+    private final int origHeight;
+    private final int width;
+    private final int height;
+    private final int xMargin;
+    private final int yMargin;
+    private final ImageInputStream input;
+    //the cached strips, and when each was last used; guarded by this
+    private final Strip[] strips = new Strip[MAX_CACHED_STRIPS];
+    private final long[] stripUses = new long[MAX_CACHED_STRIPS];
+    private long uses = 0;
+    //the strip read last, checked without locking since consecutive reads are almost always from it
+    private volatile Strip lastStrip = null;
+
+    StreamingFileImage(String filename, int subsampling) throws IOException {
+        if(subsampling < 1)
+            throw new IllegalArgumentException();
+        input = ImageIO.createImageInputStream(new File(filename));
+        if(input == null)
+            throw new IOException("Cannot open " + filename);
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if(!readers.hasNext()) {
+            input.close();
+            throw new IOException("Unsupported image format: " + filename);
+        }
+        reader = readers.next();
+        reader.setInput(input, false, true);
+        this.subsampling = subsampling;
+        try {
+            sourceWidth = reader.getWidth(0);
+            sourceHeight = reader.getHeight(0);
+        } catch(IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        origWidth = (sourceWidth + subsampling - 1) / subsampling;
+        origHeight = (sourceHeight + subsampling - 1) / subsampling;
+
+        width = FileImage.getPowerOfTwoGreaterThan(origWidth);
+        height = FileImage.getPowerOfTwoGreaterThan(origHeight);
+        xMargin = (int)Math.floor((width-origWidth)/2.0f);
+        yMargin = (int)Math.floor((height-origHeight)/2.0f);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getPixelRgb(x, y));
+    }
+
+    @Override
+    public int getPixelRgb(int x, int y) {
+        if(x < 0 || y < 0 || x >= width || y >= height)
+            throw new IndexOutOfBoundsException();
+        int origX = x - xMargin, origY = y - yMargin;
+        //pixels in the margins have the default background color
+        if(origX < 0 || origY < 0 || origX >= origWidth || origY >= origHeight)
+            return DEFAULT_RGB;
+        int[] strip = getStrip(origY / STRIP_HEIGHT);
+        return strip[(origY % STRIP_HEIGHT)*origWidth + origX];
+    }
+
+    @Override
+    public void getRowRgb(int x, int y, int length, int[] dst, int dstOffset) {
+        if(x < 0 || y < 0 || length < 0 || x+length > width || y >= height)
+            throw new IndexOutOfBoundsException();
+        int origY = y - yMargin;
+        //the part of the span inside the picture, the rest is margin
+        int from = Math.max(x, xMargin), to = Math.min(x+length, xMargin+origWidth);
+        if(origY < 0 || origY >= origHeight || from >= to) {
+            Arrays.fill(dst, dstOffset, dstOffset+length, DEFAULT_RGB);
+            return;
+        }
+        Arrays.fill(dst, dstOffset, dstOffset+from-x, DEFAULT_RGB);
+        int[] strip = getStrip(origY / STRIP_HEIGHT);
+        System.arraycopy(strip, (origY % STRIP_HEIGHT)*origWidth + from-xMargin,
+                         dst, dstOffset+from-x, to-from);
+        Arrays.fill(dst, dstOffset+to-x, dstOffset+length, DEFAULT_RGB);
+    }
+
+    /**
+     * Releases the decoder and closes the file. The pixels can't be read afterwards.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        reader.dispose();
+        Arrays.fill(strips, null);
+        lastStrip = null;
+        input.close();
+    }
+
+    /**
+     * Returns the pixels of a strip of rows of the (subsampled) picture, decoding it if it isn't cached.
+     * @param stripIndex the index of the strip, counting from the top
+     * @return the strip's packed ARGB pixels, row after row
+     */
+    private int[] getStrip(int stripIndex) {
+        Strip strip = lastStrip;
+        if(strip != null && strip.index == stripIndex)
+            return strip.pixels;
+        return findStrip(stripIndex);
+    }
+
+    /**
+     * Returns the pixels of a strip from the cache, or decodes them in place of the least recently
+     * used strip.
+     */
+    private synchronized int[] findStrip(int stripIndex) {
+        int leastUsed = 0;
+        for(int i = 0 ; i < strips.length ; i++) {
+            if(strips[i] != null && strips[i].index == stripIndex) {
+                stripUses[i] = ++uses;
+                lastStrip = strips[i];
+                return strips[i].pixels;
+            }
+            if(stripUses[i] < stripUses[leastUsed])
+                leastUsed = i;
+        }
+        int[] pixels = decodeStrip(stripIndex);
+        strips[leastUsed] = new Strip(stripIndex, pixels);
+        stripUses[leastUsed] = ++uses;
+        lastStrip = strips[leastUsed];
+        return pixels;
+    }
+
+    /**
+     * Decodes a strip of rows of the (subsampled) picture.
+     */
+    private int[] decodeStrip(int stripIndex) {
+        int firstRow = stripIndex * STRIP_HEIGHT;
+        int rows = Math.min(STRIP_HEIGHT, origHeight - firstRow);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(0, firstRow * subsampling, sourceWidth,
+                Math.min(rows * subsampling, sourceHeight - firstRow * subsampling)));
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        BufferedImage im;
+        try {
+            im = reader.read(0, param);
+        } catch(IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        int[] strip = new int[origWidth * rows];
+        im.getRGB(0, 0, Math.min(origWidth, im.getWidth()), Math.min(rows, im.getHeight()),
+                strip, 0, origWidth);
+        for(int i = 0 ; i < strip.length ; i++)
+            strip[i] |= OPAQUE_ALPHA; //same as new Color(rgb), which ignores alpha
+        return strip;
+    }
+
+    /**
+     * A decoded strip and its index.
+     */
+    private static class Strip {
+        private final int index;
+        private final int[] pixels;
+
+        private Strip(int index, int[] pixels) {
+            this.index = index;
+            this.pixels = pixels;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package ascii_art;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * checks the cache of the conversion server through HTTP: the X-Cache header of repeated requests, the
+ * eviction of the least recently used conversion, the coalescing of identical requests that arrive together
+ * and the failure every one of them gets when the image can't be decoded
+ */
+class ConversionServerTest {
+
+    private static final String QUERY = "/convert?chars=0-9&format=text&res=";
+    private static final int CONCURRENT_REQUESTS = 8;
+
+    private ConversionServer server;
+
+
+    @AfterEach
+    public void stopServer() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    /**
+     * the response of a request
+     */
+    private static class Response {
+        final int status;
+        final String cache;
+        final String body;
+
+        Response(int status, String cache, String body) {
+            this.status = status;
+            this.cache = cache;
+            this.body = body;
+        }
+    }
+
+    private Response post(byte[] image, int numCharsInRow) throws IOException {
+        URL url = new URL("http://localhost:" + server.getPort() + QUERY + numCharsInRow);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(image);
+        }
+        int status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            return new Response(status, connection.getHeaderField("X-Cache"),
+                    new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static byte[] image(int size, long seed) throws IOException {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+        return bytes.toByteArray();
+    }
+
+    private String stats() throws IOException {
+        URL url = new URL("http://localhost:" + server.getPort() + "/stats");
+        try (InputStream in = url.openStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+        }
+    }
+
+    /**
+     * sends identical requests at once, and returns their responses
+     */
+    private List<Response> postTogether(byte[] image, int numCharsInRow) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENT_REQUESTS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Response>> futures = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+                futures.add(clients.submit(() -> {
+                    start.await();
+                    return post(image, numCharsInRow);
+                }));
+            }
+            start.countDown();
+            List<Response> responses = new ArrayList<>();
+            for (Future<Response> future : futures) {
+                responses.add(future.get());
+            }
+            return responses;
+        } finally {
+            clients.shutdown();
+        }
+    }
+
+    /**
+     * a repeated request is a hit with the same body, and the least recently used conversion is evicted
+     */
+    @Test
+    public void cacheTest() throws Exception {
+        server = new ConversionServer(0, 2, 2);
+        server.start();
+        byte[] first = image(32, 1), second = image(32, 2);
+        Response miss = post(first, 8);
+        assertEquals(200, miss.status);
+        assertEquals("miss", miss.cache);
+        Response hit = post(first, 8);
+        assertEquals("hit", hit.cache);
+        assertEquals(miss.body, hit.body);
+        assertEquals("miss", post(first, 4).cache, "another resolution is another conversion");
+        assertEquals("hit", post(first, 8).cache);
+        //the cache holds two conversions: the first image at 4 chars in a row is the least recently used
+        assertEquals("miss", post(second, 8).cache);
+        assertEquals("hit", post(first, 8).cache);
+        assertEquals("miss", post(first, 4).cache, "the evicted conversion is converted again");
+        assertEquals("miss", post(second, 8).cache, "and it evicted the least recently used one");
+        assertEquals("hit", post(first, 4).cache);
+    }
+
+    /**
+     * identical requests that arrive together are converted once, and share the result
+     */
+    @Test
+    public void coalescingTest() throws Exception {
+        server = new ConversionServer(0, 4, CONCURRENT_REQUESTS);
+        server.start();
+        //large enough that the others arrive while the first is being converted
+        List<Response> responses = postTogether(image(2048, 4), 1024);
+        int misses = 0, coalesced = 0;
+        for (Response response : responses) {
+            assertEquals(200, response.status);
+            assertEquals(responses.get(0).body, response.body);
+            misses += response.cache.equals("miss") ? 1 : 0;
+            coalesced += response.cache.equals("coalesced") ? 1 : 0;
+        }
+        assertEquals(1, misses, "the image is converted once");
+        assertTrue(coalesced > 0, "no request waited for the conversion");
+        assertTrue(stats().contains("\"misses\":1,"), stats());
+    }
+
+    /**
+     * every request waiting for a conversion that fails gets the failure, and a failure isn't cached
+     */
+    @Test
+    public void failureTest() throws Exception {
+        server = new ConversionServer(0, 4, CONCURRENT_REQUESTS);
+        server.start();
+        byte[] notAnImage = new byte[1 << 20];
+        new Random(5).nextBytes(notAnImage);
+        for (Response response : postTogether(notAnImage, 8)) {
+            assertEquals(400, response.status, response.body);
+            assertEquals("Failed to decode the image\n", response.body);
+        }
+        Response again = post(notAnImage, 8);
+        assertEquals(400, again.status);
+        assertTrue(stats().contains("\"entries\":0,"), stats());
+        assertTrue(stats().contains("\"inFlight\":0}"), stats());
+    }
+}
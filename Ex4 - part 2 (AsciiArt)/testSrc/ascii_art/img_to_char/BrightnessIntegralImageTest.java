@@ -0,0 +1,42 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * checks the summed-area table against the average of the pixels themselves, on every rectangle of small
+ * images of power of 2 and of odd sizes
+ */
+class BrightnessIntegralImageTest {
+
+    private static final double EPSILON = 1e-9;
+    private static final int[][] SIZES = {{1, 1}, {8, 8}, {16, 4}, {4, 16}, {7, 5}, {5, 13}, {9, 9}};
+
+    /**
+     * every rectangle of every image, including the ones at the right and bottom edges
+     */
+    @Test
+    public void everyRectangleTest() {
+        for (int[] size : SIZES) {
+            int width = size[0], height = size[1];
+            Image img = TestImages.random(width, height, width * 31L + height);
+            BrightnessIntegralImage integralImage = new BrightnessIntegralImage(img);
+            assertEquals(width, integralImage.getWidth());
+            assertEquals(height, integralImage.getHeight());
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    for (int tileHeight = 1; y + tileHeight <= height; tileHeight++) {
+                        for (int tileWidth = 1; x + tileWidth <= width; tileWidth++) {
+                            assertEquals(TestImages.averageBrightness(img, x, y, tileWidth, tileHeight),
+                                    integralImage.averageBrightness(x, y, tileWidth, tileHeight), EPSILON,
+                                    String.format("%dx%d image, %dx%d at (%d, %d)", width, height, tileWidth,
+                                            tileHeight, x, y));
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * checks that every level of the pyramid, built by 2x2 reductions of the finest level, holds the average of
+ * the pixels of its tiles
+ */
+class BrightnessPyramidTest {
+
+    private static final double EPSILON = 1e-9;
+    private static final int[][] SIZES = {{1, 1}, {2, 2}, {8, 8}, {16, 4}, {4, 16}, {32, 8}};
+
+    /**
+     * every level between every range of resolutions, and the resolutions outside of the range or whose
+     * tiles are higher than the image, which are not built
+     */
+    @Test
+    public void everyLevelTest() {
+        for (int[] size : SIZES) {
+            int width = size[0], height = size[1];
+            Image img = TestImages.random(width, height, width * 31L + height);
+            BrightnessIntegralImage integralImage = new BrightnessIntegralImage(img);
+            for (int maxCharsInRow = 1; maxCharsInRow <= width; maxCharsInRow *= 2) {
+                for (int minCharsInRow = 1; minCharsInRow <= maxCharsInRow; minCharsInRow *= 2) {
+                    BrightnessPyramid pyramid =
+                            new BrightnessPyramid(integralImage, minCharsInRow, maxCharsInRow);
+                    for (int numCharsInRow = 1; numCharsInRow <= width; numCharsInRow *= 2) {
+                        double[] level = pyramid.getLevel(numCharsInRow);
+                        String message = String.format("%dx%d image, levels %d to %d, level %d", width,
+                                height, minCharsInRow, maxCharsInRow, numCharsInRow);
+                        int rows = height * numCharsInRow / width;
+                        if (numCharsInRow > maxCharsInRow || numCharsInRow < minCharsInRow || rows < 1) {
+                            assertNull(level, message);
+                            continue;
+                        }
+                        assertNotNull(level, message);
+                        double[] expected =
+                                TestImages.tileBrightness(img, new TileGrid(width, height, numCharsInRow));
+                        assertArrayEquals(expected, level, EPSILON, message);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * every level from the width of the image down to a single char is built when the image is at least as
+     * high as it is wide
+     */
+    @Test
+    public void fullRangeTest() {
+        for (int[] size : new int[][]{{8, 8}, {4, 16}}) {
+            Image img = TestImages.random(size[0], size[1], 7);
+            BrightnessPyramid pyramid = new BrightnessPyramid(new BrightnessIntegralImage(img), 1, size[0]);
+            for (int numCharsInRow = 1; numCharsInRow <= size[0]; numCharsInRow *= 2) {
+                TileGrid grid = new TileGrid(size[0], size[1], numCharsInRow);
+                assertArrayEquals(TestImages.tileBrightness(img, grid), pyramid.getLevel(numCharsInRow),
+                        EPSILON, "level " + numCharsInRow);
+            }
+        }
+    }
+
+    /**
+     * an empty range, or one wider than the image
+     */
+    @Test
+    public void wrongRangeTest() {
+        BrightnessIntegralImage integralImage = new BrightnessIntegralImage(TestImages.random(8, 8, 1));
+        assertThrows(IllegalArgumentException.class, () -> new BrightnessPyramid(integralImage, 0, 8));
+        assertThrows(IllegalArgumentException.class, () -> new BrightnessPyramid(integralImage, 4, 2));
+        assertThrows(IllegalArgumentException.class, () -> new BrightnessPyramid(integralImage, 1, 16));
+    }
+}
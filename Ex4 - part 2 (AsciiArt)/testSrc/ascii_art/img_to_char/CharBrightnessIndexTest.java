@@ -0,0 +1,119 @@
+package ascii_art.img_to_char;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * checks that the bucketed lookup of CharBrightnessIndex returns the same index as the linear scan it
+ * replaced, which keeps the first char whose brightness is strictly closer than the ones before it
+ */
+class CharBrightnessIndexTest {
+
+    private static final long SEED = 4;
+    private static final int SETS = 200;
+    private static final int QUERIES = 2000;
+
+    /**
+     * the linear scan the index replaced
+     *
+     * @param charsBrightness the normalized brightness of each char, by the chars' order
+     * @param brightness      the brightness to match
+     * @return the index of the first closest char, or 0 if no char is closer than 1
+     */
+    private static int linearClosestIndex(double[] charsBrightness, double brightness) {
+        double closestBrightness = 1;
+        int closestChar = 0;
+        for (int i = 0; i < charsBrightness.length; i++) {
+            if (Math.abs(charsBrightness[i] - brightness) < closestBrightness) {
+                closestBrightness = Math.abs(charsBrightness[i] - brightness);
+                closestChar = i;
+            }
+        }
+        return closestChar;
+    }
+
+    /**
+     * compares the index with the linear scan on random brightness and on the levels themselves, the
+     * midpoints between them, the bucket boundaries and values outside of [0, 1]
+     *
+     * @param charsBrightness the normalized brightness of each char, by the chars' order
+     * @param random          the source of the random brightness
+     */
+    private static void assertMatchesLinearScan(double[] charsBrightness, Random random) {
+        CharBrightnessIndex index = new CharBrightnessIndex(charsBrightness);
+        for (int i = 0; i < QUERIES; i++) {
+            assertMatches(charsBrightness, index, random.nextDouble());
+        }
+        for (double level : charsBrightness) {
+            assertMatches(charsBrightness, index, level);
+            for (double other : charsBrightness) {
+                assertMatches(charsBrightness, index, (level + other) / 2);
+            }
+        }
+        for (int bucket = 0; bucket <= 256; bucket++) {
+            assertMatches(charsBrightness, index, bucket / 256.0);
+            assertMatches(charsBrightness, index, Math.nextDown(bucket / 256.0));
+        }
+        for (double brightness : new double[]{-0.5, -Double.MIN_VALUE, 1.5, Double.NaN}) {
+            assertMatches(charsBrightness, index, brightness);
+        }
+    }
+
+    private static void assertMatches(double[] charsBrightness, CharBrightnessIndex index,
+                                      double brightness) {
+        assertEquals(linearClosestIndex(charsBrightness, brightness), index.closestIndex(brightness),
+                "brightness " + brightness);
+    }
+
+    /**
+     * random levels, as a set of chars normalized to [0, 1] has
+     */
+    @Test
+    public void randomLevelsTest() {
+        Random random = new Random(SEED);
+        for (int set = 0; set < SETS; set++) {
+            double[] charsBrightness = new double[1 + random.nextInt(100)];
+            for (int i = 0; i < charsBrightness.length; i++) {
+                charsBrightness[i] = random.nextDouble();
+            }
+            charsBrightness[random.nextInt(charsBrightness.length)] = 0;
+            charsBrightness[random.nextInt(charsBrightness.length)] = 1;
+            assertMatchesLinearScan(charsBrightness, random);
+        }
+    }
+
+    /**
+     * levels drawn from a few values, so chars share a level and some brightness is as far from two levels,
+     * where the first char must be kept
+     */
+    @Test
+    public void tiedLevelsTest() {
+        Random random = new Random(SEED);
+        for (int set = 0; set < SETS; set++) {
+            int steps = 1 + random.nextInt(8);
+            double[] charsBrightness = new double[1 + random.nextInt(40)];
+            for (int i = 0; i < charsBrightness.length; i++) {
+                charsBrightness[i] = random.nextInt(steps + 1) / (double) steps;
+            }
+            assertMatchesLinearScan(charsBrightness, random);
+        }
+        assertMatchesLinearScan(new double[]{1, 0, 1, 0, 0.5, 0.5}, random);
+        assertMatchesLinearScan(new double[]{0.25, 0.75}, random);
+    }
+
+    /**
+     * a set whose chars are all equally bright is normalized to levels that are not a number, which the
+     * linear scan never matches
+     */
+    @Test
+    public void notANumberLevelsTest() {
+        Random random = new Random(SEED);
+        assertMatchesLinearScan(new double[]{Double.NaN}, random);
+        assertMatchesLinearScan(new double[]{Double.NaN, Double.NaN, Double.NaN}, random);
+        assertMatchesLinearScan(new double[]{0.3, Double.NaN, 0.6}, random);
+        assertMatchesLinearScan(new double[0], random);
+    }
+}
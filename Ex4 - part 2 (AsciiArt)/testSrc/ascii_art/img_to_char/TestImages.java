@@ -0,0 +1,86 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+
+import java.awt.Color;
+import java.util.Random;
+
+/**
+ * small synthetic images for the tests of the tables of tile brightness, and the direct per-pixel averages
+ * the tables are checked against
+ */
+class TestImages {
+
+    private TestImages() {
+    }
+
+    /**
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @param seed   the seed of the random colors
+     * @return an image of random opaque colors
+     */
+    static Image random(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        return new Image() {
+            @Override
+            public Color getPixel(int x, int y) {
+                return new Color(pixels[y * width + x]);
+            }
+
+            @Override
+            public int getWidth() {
+                return width;
+            }
+
+            @Override
+            public int getHeight() {
+                return height;
+            }
+        };
+    }
+
+    /**
+     * averages the grey level of a rectangle of an image pixel by pixel
+     *
+     * @param img        the image
+     * @param x          the left column of the rectangle
+     * @param y          the top row of the rectangle
+     * @param tileWidth  the width of the rectangle in pixels
+     * @param tileHeight the height of the rectangle in pixels
+     * @return the average brightness, between 0 and 1
+     */
+    static double averageBrightness(Image img, int x, int y, int tileWidth, int tileHeight) {
+        double sum = 0;
+        for (int row = y; row < y + tileHeight; row++) {
+            for (int col = x; col < x + tileWidth; col++) {
+                sum += BrightnessIntegralImage.greyLevel(img.getPixel(col, row).getRGB());
+            }
+        }
+        return sum / (tileWidth * tileHeight);
+    }
+
+    /**
+     * averages the grey level of every tile of an image pixel by pixel
+     *
+     * @param img  the image
+     * @param grid the tiles of the image
+     * @return the brightness of the tiles, row after row
+     */
+    static double[] tileBrightness(Image img, TileGrid grid) {
+        int cols = grid.getNumOfColumns();
+        double[] tileBrightness = new double[grid.getNumOfRows() * cols];
+        for (int row = 0; row < grid.getNumOfRows(); row++) {
+            for (int col = 0; col < cols; col++) {
+                int left = grid.getLeft(col), top = grid.getTop(row);
+                tileBrightness[row * cols + col] = averageBrightness(img, left, top,
+                        grid.getLeft(col + 1) - left, grid.getTop(row + 1) - top);
+            }
+        }
+        return tileBrightness;
+    }
+}
@@ -0,0 +1,93 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * checks that the tiles cover every pixel once, that ragged tiles differ by at most a pixel, and that the
+ * brightness of the tiles, from the summed-area table and from the rows of the image, is the average of
+ * their pixels, at every number of chars in a row
+ */
+class TileGridTest {
+
+    private static final double EPSILON = 1e-9;
+    private static final int[][] SIZES = {{1, 1}, {8, 8}, {16, 4}, {4, 16}, {7, 5}, {5, 13}, {9, 9}, {13, 3}};
+
+    /**
+     * the edges of the tiles, and the tiles found at every pixel
+     */
+    @Test
+    public void edgesTest() {
+        for (int[] size : SIZES) {
+            int width = size[0], height = size[1];
+            for (int numCharsInRow = 1; numCharsInRow <= width; numCharsInRow++) {
+                TileGrid grid = new TileGrid(width, height, numCharsInRow);
+                assertEquals(numCharsInRow, grid.getNumOfColumns());
+                assertEdges(width, numCharsInRow, grid::getLeft);
+                assertEdges(height, grid.getNumOfRows(), grid::getTop);
+                for (int x = 0; x < width; x++) {
+                    int col = grid.getColumnAt(x);
+                    assertTrue(grid.getLeft(col) <= x && x < grid.getLeft(col + 1), "column at " + x);
+                }
+                for (int y = 0; y < height; y++) {
+                    int row = grid.getRowAt(y);
+                    assertTrue(grid.getTop(row) <= y && y < grid.getTop(row + 1), "row at " + y);
+                }
+            }
+        }
+    }
+
+    /**
+     * checks that the edges of the parts of a length start at 0, end at the length and leave parts that
+     * differ by at most a pixel
+     */
+    private static void assertEdges(int length, int parts, IntUnaryOperator edge) {
+        assertEquals(0, edge.applyAsInt(0));
+        assertEquals(length, edge.applyAsInt(parts));
+        int nominal = length / parts;
+        for (int i = 0; i < parts; i++) {
+            int part = edge.applyAsInt(i + 1) - edge.applyAsInt(i);
+            assertTrue(part == nominal || part == nominal + 1, "part " + i + " of " + parts + ": " + part);
+        }
+    }
+
+    /**
+     * the brightness of every tile, including the ragged tiles at the right and bottom edges
+     */
+    @Test
+    public void tileBrightnessTest() {
+        for (int[] size : SIZES) {
+            int width = size[0], height = size[1];
+            Image img = TestImages.random(width, height, width * 31L + height);
+            BrightnessIntegralImage integralImage = new BrightnessIntegralImage(img);
+            for (int numCharsInRow = 1; numCharsInRow <= width; numCharsInRow++) {
+                TileGrid grid = new TileGrid(width, height, numCharsInRow);
+                double[] expected = TestImages.tileBrightness(img, grid);
+                String message =
+                        String.format("%dx%d image, %d chars in a row", width, height, numCharsInRow);
+                assertArrayEquals(expected, BrightnessImgCharMatcher.calculateImageBrightness(integralImage,
+                        numCharsInRow), EPSILON, message);
+                double[] streamed = new double[expected.length];
+                BrightnessImgCharMatcher.calculateImageBrightness(img, grid, 0, grid.getNumOfRows(), 0,
+                        numCharsInRow, streamed);
+                assertArrayEquals(expected, streamed, EPSILON, message);
+            }
+        }
+    }
+
+    /**
+     * a number of chars in a row outside of [1, width]
+     */
+    @Test
+    public void wrongNumOfCharsTest() {
+        assertThrows(IllegalArgumentException.class, () -> new TileGrid(8, 8, 0));
+        assertThrows(IllegalArgumentException.class, () -> new TileGrid(8, 8, 9));
+    }
+}
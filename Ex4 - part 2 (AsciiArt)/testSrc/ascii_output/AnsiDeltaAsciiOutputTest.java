@@ -0,0 +1,161 @@
+package ascii_output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Replays the escape sequences of AnsiDeltaAsciiOutput onto a grid of cells, as a terminal would,
+ * and checks that after every frame the grid shows exactly that frame, that the byte counts match
+ * the bytes written, and that short unchanged gaps are merged into one run.
+ */
+class AnsiDeltaAsciiOutputTest {
+    private static final char EMPTY = 0;
+    private static final char ESCAPE = '\033';
+    private static final String CHARS = "0123456789abcdef";
+
+    /**
+     * A terminal that understands the clear screen and the cursor position sequences.
+     */
+    private static class Terminal {
+        private final char[][] cells;
+        private int row = 0;
+        private int col = 0;
+
+        Terminal(int rows, int cols) {
+            cells = new char[rows][cols];
+        }
+
+        void replay(String text) {
+            int i = 0;
+            while(i < text.length()) {
+                char c = text.charAt(i);
+                if(c != ESCAPE) {
+                    cells[row][col++] = c;
+                    i++;
+                    continue;
+                }
+                if(text.charAt(i+1) != '[')
+                    fail("Not a control sequence at " + i);
+                int end = i + 2;
+                while(!Character.isLetter(text.charAt(end)))
+                    end++;
+                String params = text.substring(i+2, end);
+                switch(text.charAt(end)) {
+                    case 'J':
+                        assertEquals("2", params);
+                        for(char[] cellRow : cells)
+                            Arrays.fill(cellRow, EMPTY);
+                        break;
+                    case 'H':
+                        String[] position = params.split(";");
+                        row = Integer.parseInt(position[0]) - 1;
+                        col = Integer.parseInt(position[1]) - 1;
+                        break;
+                    default:
+                        fail("Unexpected sequence " + text.substring(i, end+1));
+                }
+                i = end + 1;
+            }
+        }
+
+        /**
+         * Checks that the grid shows a frame, each char followed by a space, and nothing beside it.
+         */
+        void assertShows(char[][] frame, String message) {
+            for(int y = 0 ; y < cells.length ; y++) {
+                for(int x = 0 ; x < cells[y].length ; x++) {
+                    char expected = EMPTY;
+                    if(y < frame.length && x < frame[y].length * 2)
+                        expected = x % 2 == 0 ? frame[y][x/2] : ' ';
+                    assertEquals(expected, cells[y][x], message + ", cell (" + x + ", " + y + ")");
+                }
+            }
+        }
+    }
+
+    /**
+     * Frames that change a few random cells, a whole row, nothing, or their dimensions.
+     */
+    @Test
+    public void replayTest() {
+        Random random = new Random(16);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AnsiDeltaAsciiOutput output = new AnsiDeltaAsciiOutput(bytes);
+        Terminal terminal = new Terminal(20, 60);
+        char[][] frame = randomFrame(random, 12, 25);
+        for(int i = 0 ; i < 200 ; i++) {
+            if(i % 50 == 49) {
+                frame = randomFrame(random, 5 + random.nextInt(10), 5 + random.nextInt(20));
+            } else if(i % 10 != 9) {
+                frame = copy(frame);
+                int changes = random.nextInt(i % 2 == 0 ? 4 : 40);
+                for(int change = 0 ; change < changes ; change++)
+                    frame[random.nextInt(frame.length)][random.nextInt(frame[0].length)] = randomChar(random);
+                if(i % 7 == 0)
+                    frame[random.nextInt(frame.length)] = randomFrame(random, 1, frame[0].length)[0];
+            }
+            int before = bytes.size();
+            output.output(frame);
+            int written = bytes.size() - before;
+            terminal.replay(new String(bytes.toByteArray(), before, written, StandardCharsets.US_ASCII));
+            terminal.assertShows(frame, "frame " + i);
+            assertEquals(written, output.getLastFrameBytes(), "bytes of frame " + i);
+            assertEquals(written, output.getBytesWritten(), "bytes of frame " + i);
+            assertEquals(bytes.size(), output.getTotalBytes(), "bytes up to frame " + i);
+        }
+    }
+
+    /**
+     * Changed cells separated by fewer than 4 unchanged cells are written as one run, and the
+     * ones separated by more as separate runs. A frame that didn't change writes no run.
+     */
+    @Test
+    public void runsTest() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AnsiDeltaAsciiOutput output = new AnsiDeltaAsciiOutput(bytes);
+        char[][] frame = {"aaaaaaaaaaaa".toCharArray()};
+        output.output(frame);
+        assertEquals(1, output.getLastFrameRuns());
+
+        output.output(copy(frame));
+        assertEquals(0, output.getLastFrameRuns());
+        assertEquals("\033[2;1H".length(), output.getLastFrameBytes());
+
+        output.output(new char[][]{"baaabaaaaaaa".toCharArray()});
+        assertEquals(1, output.getLastFrameRuns(), "a gap of 3 cells is rewritten");
+
+        output.output(new char[][]{"aaaaaaaaaaaa".toCharArray()});
+        output.output(new char[][]{"baaaabaaaaaa".toCharArray()});
+        assertEquals(2, output.getLastFrameRuns(), "a gap of 4 cells is jumped over");
+
+        output.reset();
+        output.output(new char[][]{"baaaabaaaaaa".toCharArray()});
+        assertEquals(1, output.getLastFrameRuns(), "a reset draws the whole frame");
+    }
+
+    private static char[][] randomFrame(Random random, int rows, int cols) {
+        char[][] frame = new char[rows][cols];
+        for(char[] row : frame)
+            for(int x = 0 ; x < cols ; x++)
+                row[x] = randomChar(random);
+        return frame;
+    }
+
+    private static char randomChar(Random random) {
+        return CHARS.charAt(random.nextInt(CHARS.length()));
+    }
+
+    private static char[][] copy(char[][] frame) {
+        char[][] copy = new char[frame.length][];
+        for(int y = 0 ; y < frame.length ; y++)
+            copy[y] = frame[y].clone();
+        return copy;
+    }
+}